@@ -0,0 +1,94 @@
+package com.szymm.chat.misc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixmapBenchmark {
+    private Pixmap pixmap;
+    private byte[] pixmapBytes;
+    private Pixmap sprite;
+    private byte[] spriteBytes;
+    private PixmapStream stream;
+    private Pixmap changed;
+    private PixmapTiler tiler;
+
+    @Setup
+    public void setup() {
+        byte size = 64;
+        byte[] pixels = new byte[size * size];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = (byte) ((i / size + i % size) % 4);
+        this.pixmap = new Pixmap(size, size, pixels, Pixmap.LUT_4W);
+        this.pixmapBytes = this.pixmap.encode();
+        byte[] bands = new byte[size * size];
+        for (int i = 0; i < bands.length; i++)
+            bands[i] = (byte) (i / (size * 8) % 4);
+        this.sprite = new Pixmap(size, size, bands, Pixmap.LUT_4W);
+        this.spriteBytes = this.sprite.encode();
+        this.stream = new PixmapStream(0, Integer.MAX_VALUE);
+        this.stream.encode(this.pixmap);
+        byte[] moved = pixels.clone();
+        for (int i = 0; i < size; i++)
+            moved[i * size + i] = 0;
+        this.changed = new Pixmap(size, size, moved, Pixmap.LUT_4W);
+        int side = size * 4;
+        byte[] large = new byte[side * side];
+        for (int i = 0; i < large.length; i++)
+            large[i] = (byte) ((i / side / 16 + i % side / 16) % 4);
+        this.tiler = new PixmapTiler(new Pixmap(side, side, large, Pixmap.LUT_4W), 0);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return this.pixmap.encode();
+    }
+
+    @Benchmark
+    public Pixmap decode() {
+        return Pixmap.decode(this.pixmapBytes, Pixmap.LUT_4W);
+    }
+
+    @Benchmark
+    public byte[] encodeRuns() {
+        return this.sprite.encode();
+    }
+
+    @Benchmark
+    public Pixmap decodeRuns() {
+        return Pixmap.decode(this.spriteBytes, Pixmap.LUT_4W);
+    }
+
+    @Benchmark
+    public byte[] encodeDelta() {
+        return this.stream.encode(this.changed);
+    }
+
+    @Benchmark
+    public int encodeTiles() {
+        int size = 0;
+        for (int i = 0; i < this.tiler.getTileCount(); i++)
+            size += this.tiler.encodeTile(i).length;
+        return size;
+    }
+
+    @Benchmark
+    public String display() {
+        return this.pixmap.display();
+    }
+}
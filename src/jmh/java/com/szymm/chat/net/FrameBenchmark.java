@@ -0,0 +1,106 @@
+package com.szymm.chat.net;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+    @Param({"64", "1024", "8192"})
+    public int frameSize;
+
+    private DatagramSocket clientSocket;
+    private DatagramSocket pipeSocket;
+    private DatagramSocket inlineSocket;
+    private DatagramSocket sinkSocket;
+    private UDPMultiplexer pipeMultiplexer;
+    private UDPMultiplexer inlineMultiplexer;
+    private UDPEndpoint toPipe;
+    private UDPEndpoint toInline;
+    private UDPEndpoint toSink;
+    private UDPEndpoint pipeEndpoint;
+    private Frame frame;
+    private int datagramCount;
+    private int dispatchedBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        this.clientSocket = new DatagramSocket(0, loopback);
+        this.pipeSocket = new DatagramSocket(0, loopback);
+        this.inlineSocket = new DatagramSocket(0, loopback);
+        this.sinkSocket = new DatagramSocket(0, loopback);
+        UDPMultiplexer clientMultiplexer = new UDPMultiplexer(this.clientSocket, FrameBenchmark.maxSize);
+        this.pipeMultiplexer = new UDPMultiplexer(this.pipeSocket, FrameBenchmark.maxSize);
+        this.inlineMultiplexer = new UDPMultiplexer(this.inlineSocket, FrameBenchmark.maxSize);
+        this.inlineMultiplexer.setDispatcher((endpoint, datagram, length) -> this.dispatchedBytes += length);
+
+        Address clientAddress = Address.of(loopback, this.clientSocket.getLocalPort());
+        this.toPipe = new UDPEndpoint(clientMultiplexer, Address.of(loopback, this.pipeSocket.getLocalPort()));
+        this.toInline = new UDPEndpoint(clientMultiplexer, Address.of(loopback, this.inlineSocket.getLocalPort()));
+        this.toSink = new UDPEndpoint(clientMultiplexer, Address.of(loopback, this.sinkSocket.getLocalPort()));
+        this.pipeEndpoint = new UDPEndpoint(this.pipeMultiplexer, clientAddress);
+        new UDPEndpoint(this.inlineMultiplexer, clientAddress);
+
+        this.frame = new Frame(new byte[this.frameSize]);
+        boolean isFragmented = this.frameSize + 4 > Frame.MAX_DATAGRAM;
+        this.datagramCount = isFragmented
+                ? (this.frameSize + Frame.FRAGMENT_CHUNK - 1) / Frame.FRAGMENT_CHUNK
+                : 1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.clientSocket.close();
+        this.pipeSocket.close();
+        this.inlineSocket.close();
+        this.sinkSocket.close();
+    }
+
+    @Benchmark
+    public void sendTo() throws IOException {
+        this.frame.sendTo(this.toSink);
+    }
+
+    @Benchmark
+    public Frame roundTripPipe() throws IOException {
+        this.frame.sendTo(this.toPipe);
+        for (int i = 0; i < this.datagramCount; i++)
+            this.pipeMultiplexer.read();
+        return Frame.from(this.pipeEndpoint);
+    }
+
+    @Benchmark
+    public int roundTripInline() throws IOException {
+        this.frame.sendTo(this.toInline);
+        for (int i = 0; i < this.datagramCount; i++)
+            this.inlineMultiplexer.read();
+        return this.dispatchedBytes;
+    }
+
+    @Benchmark
+    public String hexDump() {
+        return this.frame.toString();
+    }
+
+    private static final int maxSize = 1 << 16;
+}
@@ -0,0 +1,89 @@
+package com.szymm.chat.net;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+    @Param({"16", "256", "4096"})
+    public int textLength;
+
+    private String messageText;
+    private byte[] textBytes;
+    private byte[] binaryBytes;
+    private Message message;
+    private TCPEndpoint textEndpoint;
+    private TCPEndpoint binaryEndpoint;
+
+    @Setup
+    public void setup() {
+        char[] chars = new char[this.textLength];
+        Arrays.fill(chars, 'x');
+        String text = new String(chars);
+        this.message = new Message(7, "alice", "pm", "", text);
+        this.messageText = "alice pm " + text;
+        this.textBytes = this.messageText.getBytes(StandardCharsets.UTF_8);
+        byte[] binary = this.message.encode(WireFormat.BINARY);
+        this.binaryBytes = Arrays.copyOfRange(binary, 4, binary.length);
+        this.textEndpoint = MessageBenchmark.nullEndpoint(WireFormat.TEXT);
+        this.binaryEndpoint = MessageBenchmark.nullEndpoint(WireFormat.BINARY);
+    }
+
+    @Benchmark
+    public Message fromString() {
+        return Message.from(this.messageText);
+    }
+
+    @Benchmark
+    public Message fromTextBytes() {
+        return Message.from(this.textBytes);
+    }
+
+    @Benchmark
+    public Message fromBinaryBytes() {
+        return Message.from(this.binaryBytes);
+    }
+
+    @Benchmark
+    public void sendToText() throws IOException {
+        this.message.sendTo(this.textEndpoint);
+    }
+
+    @Benchmark
+    public void sendToBinary() throws IOException {
+        this.message.sendTo(this.binaryEndpoint);
+    }
+
+    @Benchmark
+    public void sendToUncached() throws IOException {
+        this.message.withSenderId(7).sendTo(this.textEndpoint);
+    }
+
+    private static TCPEndpoint nullEndpoint(WireFormat format) {
+        TCPEndpoint endpoint = new TCPEndpoint(new Socket(), InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        endpoint.setFormat(format);
+        return endpoint;
+    }
+}
@@ -0,0 +1,54 @@
+package com.szymm.chat.user;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+    private RateLimiter limiter;
+    private RateLimiter flooded;
+
+    @Setup
+    public void setup() {
+        this.limiter = new RateLimiter(0, 1_000_000_000, 1_000_000_000_000L, 1);
+        this.flooded = new RateLimiter(0, 1, 1_000_000, 1);
+    }
+
+    @Benchmark
+    @Group("allowed")
+    @GroupThreads(1)
+    public boolean allowFrame() {
+        return this.limiter.allowFrame(100);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public boolean allowFrameContended() {
+        return this.limiter.allowFrame(100);
+    }
+
+    @Benchmark
+    @Group("limited")
+    @GroupThreads(1)
+    public boolean rejectFrame() {
+        return this.flooded.allowFrame(100);
+    }
+}
@@ -0,0 +1,75 @@
+package com.szymm.chat.user;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserStoreBenchmark {
+    @Param({"10", "1000"})
+    public int userCount;
+
+    private UserStore userStore;
+
+    @Setup
+    public void setup() {
+        this.userStore = new UserStore();
+        for (int i = 0; i < this.userCount; i++)
+            this.userStore.add(new User("user" + i, null, null));
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(4)
+    public List<User> broadcastReadOnly() {
+        return this.userStore.broadcast("user0");
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public List<User> broadcast() {
+        return this.userStore.broadcast("user0");
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void churn() {
+        this.userStore.add(new User("churn", null, null));
+        this.userStore.remove("churn");
+    }
+
+    @Benchmark
+    @Group("filtered")
+    @GroupThreads(3)
+    public List<User> filter() {
+        return this.userStore.filter(user -> user.getId() % 2 == 0);
+    }
+
+    @Benchmark
+    @Group("filtered")
+    @GroupThreads(1)
+    public void filterChurn() {
+        this.userStore.add(new User("churn", null, null));
+        this.userStore.remove("churn");
+    }
+}
@@ -3,25 +3,36 @@ package com.szymm.chat;
 import com.szymm.chat.net.Address;
 import com.szymm.chat.net.Frame;
 import com.szymm.chat.net.Message;
+import com.szymm.chat.net.Opcode;
 import com.szymm.chat.net.TCPEndpoint;
 import com.szymm.chat.net.UDPEndpoint;
+import com.szymm.chat.net.WireFormat;
 import com.szymm.chat.misc.Pixmap;
+import com.szymm.chat.misc.PixmapReceiver;
+import com.szymm.chat.misc.PixmapStream;
+import com.szymm.chat.misc.PixmapTiler;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ChatClient {
-    private boolean shouldRun;
+    private volatile boolean shouldRun;
     private final TCPEndpoint tcpEndpoint;
     private final UDPEndpoint udpEndpoint;
+    private final PixmapStream pixmapStream;
+    private final PixmapReceiver pixmapReceiver;
     private String name;
 
     public ChatClient(String host, int tcpPort, int udpPort) throws IOException {
         this.shouldRun = true;
         this.tcpEndpoint = new TCPEndpoint(Address.of(host, tcpPort));
         this.udpEndpoint = new UDPEndpoint(Address.of(host, udpPort));
+        this.pixmapStream = new PixmapStream(ChatClient.keyframeInterval);
+        this.pixmapReceiver = new PixmapReceiver(Pixmap.LUT_4W);
     }
 
     public void run() {
@@ -29,6 +40,8 @@ public class ChatClient {
         System.out.print("name> ");
         this.name = in.nextLine();
         System.out.println("your name " + this.name);
+        System.out.println("negotiating wire format...");
+        this.negotiateWire();
         System.out.println("joining...");
         this.join();
         System.out.println("opening UDP channel...");
@@ -36,9 +49,11 @@ public class ChatClient {
         this.plusUDP(localAddress);
         System.out.println("connected");
 
-        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
         executorService.submit(this::listenTCP);
+        executorService.submit(this::receiveUDP);
         executorService.submit(this::listenUDP);
+        executorService.submit(this::heartbeat);
 
         while (this.shouldRun) {
             String line = in.nextLine();
@@ -50,7 +65,13 @@ public class ChatClient {
                     case "pm" -> this.sendPM(value);
                     case "dm" -> this.sendDM(value);
                     case "pxm" -> this.sendPixmap();
+                    case "anim" -> this.sendAnimation(value);
+                    case "big" -> this.sendLargePixmap(value);
                     case "ls" -> this.listUsers();
+                    case "stats" -> this.requestStats();
+                    case "history" -> this.requestHistory(value);
+                    case "room" -> this.joinRoom(value);
+                    case "leave" -> this.leaveRoom();
                     case "help", "?" -> this.help();
                     case "quit" -> this.quit();
                     default -> System.out.println("unknown command");
@@ -61,10 +82,29 @@ public class ChatClient {
         }
     }
 
+    public void negotiateWire() {
+        try {
+            Message msgWire = new Message(this.name, "wire", "1");
+            this.send(msgWire);
+            this.tcpEndpoint.socket.setSoTimeout(ChatClient.handshakeMillis);
+            try {
+                Message response = Message.from(this.tcpEndpoint);
+                if (response.opcode == Opcode.WIRE && response.text.equals("1"))
+                    this.tcpEndpoint.setFormat(WireFormat.BINARY);
+            } catch (SocketTimeoutException e) {
+                System.out.println("server did not answer wire, staying on text");
+            } finally {
+                this.tcpEndpoint.socket.setSoTimeout(0);
+            }
+        } catch (IOException e) {
+            System.out.println("wire IO exception: " + e);
+        }
+    }
+
     public void join() {
         try {
             Message msgJoin = new Message(this.name, "join", "");
-            msgJoin.sendTo(this.tcpEndpoint);
+            this.send(msgJoin);
         } catch (IOException e) {
             System.out.println("join IO exception: " + e);
         }
@@ -74,7 +114,7 @@ public class ChatClient {
         try {
             String portText = Integer.toString(localAddress.port);
             Message msgPlusUDP = new Message(this.name, "+udp", portText);
-            msgPlusUDP.sendTo(this.tcpEndpoint);
+            this.send(msgPlusUDP);
         } catch (IOException e) {
             System.out.println("+udp IO exception: " + e);
         }
@@ -83,16 +123,21 @@ public class ChatClient {
     public void sendPM(String text) {
         try {
             Message msgPM = new Message(this.name, "pm", text);
-            msgPM.sendTo(this.tcpEndpoint);
+            this.send(msgPM);
         } catch (IOException e) {
             System.out.println("pm IO exception: " + e);
         }
     }
 
     public void sendDM(String text) {
+        String[] parts = text.split(":", 2);
+        if (parts.length < 2) {
+            System.out.println("cannot parse dm target");
+            return;
+        }
         try {
-            Message msgDM = new Message(this.name, "dm", text);
-            msgDM.sendTo(this.tcpEndpoint);
+            Message msgDM = new Message(-1, this.name, "dm", parts[0], parts[1]);
+            this.send(msgDM);
         } catch (IOException e) {
             System.out.println("dm IO exception: " + e);
         }
@@ -100,43 +145,134 @@ public class ChatClient {
 
     public void sendPixmap() {
         try {
-            Pixmap pixmap = Pixmap.of("""
-                    4w
-                    _0_0_0_0_3_3_3_3_0_0_0_0
-                    _0_0_3_3_3_3_3_3_3_1_0_0
-                    _0_3_3_3_3_1_1_3_3_1_1_0
-                    _0_3_3_3_3_1_1_3_3_1_1_0
-                    _3_3_3_3_3_3_3_3_3_1_1_1
-                    _3_3_3_3_3_3_3_3_1_1_1_1
-                    _3_3_3_3_1_1_1_1_1_1_1_1
-                    _3_3_3_1_1_1_1_1_1_1_1_1
-                    _0_3_3_1_1_3_3_1_1_1_1_0
-                    _0_3_3_1_1_3_3_1_1_1_1_0
-                    _0_0_3_1_1_1_1_1_1_1_0_0
-                    _0_0_0_0_1_1_1_1_0_0_0_0"""
-            );
-            Frame frm = new Frame(pixmap.encode());
-            frm.sendTo(this.udpEndpoint);
+            this.sendPixmap(ChatClient.sprite);
         } catch (IOException e) {
             System.out.println("pxm IO exception: " + e);
         }
     }
 
+    public void sendAnimation(String count) {
+        try {
+            int frames = count.isBlank() ? ChatClient.keyframeInterval : Integer.parseInt(count.trim());
+            for (int i = 0; i < frames; i++) {
+                this.sendPixmap(ChatClient.highlightRow(ChatClient.sprite, i % ChatClient.sprite.getY()));
+                Thread.sleep(ChatClient.frameMillis);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("cannot parse frame count");
+        } catch (IOException e) {
+            System.out.println("anim IO exception: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void sendLargePixmap(String scale) {
+        try {
+            int factor = scale.isBlank() ? ChatClient.largeScale : Integer.parseInt(scale.trim());
+            PixmapTiler tiler = new PixmapTiler(ChatClient.scale(ChatClient.sprite, factor),
+                    ThreadLocalRandom.current().nextInt());
+            for (int i = 0; i < tiler.getTileCount(); i++) {
+                Frame frm = new Frame(tiler.encodeTile(i), true);
+                frm.sendTo(this.udpEndpoint);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("cannot parse scale");
+        } catch (IllegalArgumentException e) {
+            System.out.println("big: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("big IO exception: " + e);
+        }
+    }
+
+    private void sendPixmap(Pixmap pixmap) throws IOException {
+        Frame frm = new Frame(this.pixmapStream.encode(pixmap));
+        frm.sendTo(this.udpEndpoint);
+    }
+
+    private static Pixmap highlightRow(Pixmap pixmap, int row) {
+        byte[] pixels = new byte[pixmap.getX() * pixmap.getY()];
+        int i = 0;
+        for (int yi = 0; yi < pixmap.getY(); yi++) {
+            for (int xi = 0; xi < pixmap.getX(); xi++) {
+                byte pixel = pixmap.pixelAt(xi, yi);
+                pixels[i++] = yi == row && pixel == 1 ? 2 : pixel;
+            }
+        }
+        return new Pixmap(pixmap.getX(), pixmap.getY(), pixels, pixmap.getLUT());
+    }
+
+    private static Pixmap scale(Pixmap pixmap, int factor) {
+        if (factor <= 0)
+            throw new IllegalArgumentException("scale must be positive");
+        int x = pixmap.getX() * factor;
+        int y = pixmap.getY() * factor;
+        byte[] pixels = new byte[x * y];
+        int i = 0;
+        for (int yi = 0; yi < y; yi++) {
+            for (int xi = 0; xi < x; xi++)
+                pixels[i++] = pixmap.pixelAt(xi / factor, yi / factor);
+        }
+        return new Pixmap(x, y, pixels, pixmap.getLUT());
+    }
+
     public void listUsers() {
         try {
             Message msgLS = new Message(this.name, "ls", "");
-            msgLS.sendTo(this.tcpEndpoint);
+            this.send(msgLS);
         } catch (IOException e) {
             System.out.println("ls IO exception: " + e);
         }
     }
 
+    public void requestStats() {
+        try {
+            Message msgStats = new Message(this.name, "stats", "");
+            this.send(msgStats);
+        } catch (IOException e) {
+            System.out.println("stats IO exception: " + e);
+        }
+    }
+
+    public void requestHistory(String count) {
+        try {
+            Message msgHistory = new Message(this.name, "history", count);
+            this.send(msgHistory);
+        } catch (IOException e) {
+            System.out.println("history IO exception: " + e);
+        }
+    }
+
+    public void joinRoom(String room) {
+        try {
+            Message msgRoom = new Message(this.name, "join-room", room);
+            this.send(msgRoom);
+        } catch (IOException e) {
+            System.out.println("join-room IO exception: " + e);
+        }
+    }
+
+    public void leaveRoom() {
+        try {
+            Message msgLeave = new Message(this.name, "leave-room", "");
+            this.send(msgLeave);
+        } catch (IOException e) {
+            System.out.println("leave-room IO exception: " + e);
+        }
+    }
+
     public void help() {
         System.out.println("HELP");
         System.out.println("  pm:<text>       send public message of <text>");
         System.out.println("  dm:<to>:<text>  send direct message of <text> to user <to>");
         System.out.println("  pxm:            send example pixmap over udp");
+        System.out.println("  anim:<n>        stream <n> animated pixmap frames");
+        System.out.println("  big:<n>         send pixmap scaled <n> times in reliable tiles");
         System.out.println("  ls:             list users");
+        System.out.println("  stats:          show server metrics");
+        System.out.println("  history:<n>     replay last <n> messages");
+        System.out.println("  room:<name>     move to room <name>");
+        System.out.println("  leave:          go back to the lobby");
         System.out.println("  help: / ?:      display this help");
         System.out.println("  quit:           quit");
     }
@@ -144,13 +280,32 @@ public class ChatClient {
     public void quit() {
         try {
             Message msgQuit = new Message(this.name, "quit", "");
-            msgQuit.sendTo(this.tcpEndpoint);
+            this.send(msgQuit);
             this.shouldRun = false;
         } catch (IOException e) {
             System.out.println("quit IO exception: " + e);
         }
     }
 
+    public void heartbeat() {
+        try {
+            while (this.shouldRun) {
+                Thread.sleep(ChatClient.heartbeatMillis);
+                this.send(new Message(this.name, "ping", ""));
+            }
+        } catch (IOException e) {
+            System.out.println("ping IO exception: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(Message message) throws IOException {
+        synchronized (this.tcpEndpoint) {
+            message.sendTo(this.tcpEndpoint);
+        }
+    }
+
     public void listenTCP() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
@@ -162,17 +317,51 @@ public class ChatClient {
         }
     }
 
+    public void receiveUDP() {
+        try {
+            while (!Thread.currentThread().isInterrupted())
+                this.udpEndpoint.multiplexer.read();
+        } catch (IOException e) {
+            System.out.println("UDP receive IO exception: " + e);
+        }
+    }
+
     public void listenUDP() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                this.udpEndpoint.multiplexer.read();
                 Frame frm = Frame.from(this.udpEndpoint);
                 System.out.println(frm);
-                Pixmap pixmap = Pixmap.decode(frm.bytes, Pixmap.LUT_4W);
-                System.out.println(pixmap.display());
+                try {
+                    this.pixmapReceiver.accept(frm.bytes)
+                            .filter(pixmap -> !this.pixmapReceiver.isPartial(pixmap))
+                            .ifPresent(pixmap -> System.out.println(pixmap.display()));
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    System.out.println("pixmap decode exception: " + e);
+                }
             }
         } catch (IOException e) {
             System.out.println("UDP IO exception: " + e);
         }
     }
+
+    private static final int keyframeInterval = 8;
+    private static final long frameMillis = 100;
+    private static final long heartbeatMillis = 15_000;
+    private static final int handshakeMillis = 2000;
+    private static final int largeScale = 16;
+    private static final Pixmap sprite = Pixmap.of("""
+            4w
+            _0_0_0_0_3_3_3_3_0_0_0_0
+            _0_0_3_3_3_3_3_3_3_1_0_0
+            _0_3_3_3_3_1_1_3_3_1_1_0
+            _0_3_3_3_3_1_1_3_3_1_1_0
+            _3_3_3_3_3_3_3_3_3_1_1_1
+            _3_3_3_3_3_3_3_3_1_1_1_1
+            _3_3_3_3_1_1_1_1_1_1_1_1
+            _3_3_3_1_1_1_1_1_1_1_1_1
+            _0_3_3_1_1_3_3_1_1_1_1_0
+            _0_3_3_1_1_3_3_1_1_1_1_0
+            _0_0_3_1_1_1_1_1_1_1_0_0
+            _0_0_0_0_1_1_1_1_0_0_0_0"""
+    );
 }
@@ -1,84 +1,311 @@
 package com.szymm.chat;
 
+import com.szymm.chat.federation.Federation;
 import com.szymm.chat.net.Address;
 import com.szymm.chat.handler.Handler;
+import com.szymm.chat.handler.TCPEventLoop;
 import com.szymm.chat.handler.TCPHandler;
+import com.szymm.chat.handler.UDPLimiter;
+import com.szymm.chat.handler.UDPRelay;
+import com.szymm.chat.history.HistoryStore;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.user.IdleReaper;
+import com.szymm.chat.user.OutboundQueue;
+import com.szymm.chat.user.RateLimiter;
+import com.szymm.chat.user.Roster;
 import com.szymm.chat.user.UserStore;
 import com.szymm.chat.net.TCPEndpoint;
 import com.szymm.chat.net.UDPMultiplexer;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Metrics;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.Optional;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class ChatServer {
     private final ExecutorService executorService;
+    private final ServerConfig config;
     private final int tcpPort;
     private final int udpPort;
+    private final ServerSocketChannel messageChannel;
     private final ServerSocket messageSocket;
+    private final TCPEventLoop[] eventLoops;
+    private final HistoryStore history;
+    private final Federation federation;
+    private final IdleReaper idleReaper;
+    private final List<Future<?>> services;
+    private final Set<TCPEndpoint> connections;
+    private final AtomicBoolean isStopping;
+    private final CountDownLatch terminated;
     public final UDPMultiplexer udpMultiplexer;
     public final UserStore userStore;
+    public final Metrics metrics;
 
 
-    public ChatServer(int tcpPort, int udpPort) throws IOException {
+    public ChatServer(ServerConfig config) throws IOException {
+        this.config = config;
         this.userStore = new UserStore();
+        this.metrics = new Metrics();
+        this.services = new CopyOnWriteArrayList<>();
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.isStopping = new AtomicBoolean(false);
+        this.terminated = new CountDownLatch(1);
         this.executorService = this.createExecutorService();
-        this.tcpPort = tcpPort;
-        this.udpPort = udpPort;
-        this.messageSocket = new ServerSocket(tcpPort);
-        DatagramSocket frameSocket = new DatagramSocket(udpPort);
-        this.udpMultiplexer = new UDPMultiplexer(frameSocket, 4096);
+        this.tcpPort = config.getTCPPort();
+        this.udpPort = config.getUDPPort();
+        this.messageChannel = ServerSocketChannel.open();
+        this.messageChannel.bind(new InetSocketAddress(this.tcpPort));
+        this.messageSocket = this.messageChannel.socket();
+        this.eventLoops = new TCPEventLoop[config.getSelectorThreads()];
+        for (int i = 0; i < this.eventLoops.length; i++)
+            this.eventLoops[i] = new TCPEventLoop(this, config.getMaxMessageSize());
+        DatagramSocket frameSocket = new DatagramSocket(this.udpPort);
+        this.udpMultiplexer = new UDPMultiplexer(frameSocket, 4096, this.metrics);
+        if (config.usesInlineUDP())
+            this.udpMultiplexer.setDispatcher(new UDPRelay(this));
+        if (config.usesRateLimit())
+            this.udpMultiplexer.setAdmission(new UDPLimiter(this));
+        this.history = config.usesHistory() ? HistoryStore.open(config.getHistoryDirectory()) : null;
+        this.federation = config.usesFederation() ? new Federation(this, config, this.executorService) : null;
+        if (this.federation != null)
+            this.userStore.setListener(this.federation);
+        this.idleReaper = config.usesIdleTimeout()
+                ? new IdleReaper(this.userStore, config.getIdleTimeoutMillis(), this.metrics)
+                : null;
+        this.metrics.gauge("users", () -> this.userStore.roster().size());
+        this.metrics.gauge("rooms", () -> this.userStore.rooms().roomCount());
+        this.metrics.gauge("log.dropped", Log::getDroppedCount);
+    }
+
+    public ChatServer(int tcpPort, int udpPort) throws IOException {
+        this(ServerConfig.of(tcpPort, udpPort));
     }
 
     protected ExecutorService createExecutorService() {
+        if (this.config.usesVirtualThreads())
+            return ChatServer.newVirtualThreadExecutor();
         return Executors.newCachedThreadPool();
     }
 
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (InvocationTargetException e) {
+            throw new UnsupportedOperationException("virtual threads unavailable", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or newer", e);
+        }
+    }
+
+    public void start() {
+        this.startTCP();
+        this.startUDP();
+    }
+
     public void startTCP() {
-        this.executorService.submit(this::listenTCP);
+        if (this.config.usesSelector()) {
+            for (TCPEventLoop eventLoop : this.eventLoops)
+                this.serve(eventLoop);
+            this.serve(this::listenSelector);
+        } else {
+            this.serve(this::listenTCP);
+        }
+        if (this.config.getStatsIntervalMillis() > 0)
+            this.serve(this::dumpStats);
+        if (this.idleReaper != null)
+            this.serve(this.idleReaper);
+        if (this.federation != null) {
+            this.serve(this.federation::listen);
+            this.serve(this.federation::dial);
+        }
     }
 
     public void startUDP() {
-        this.executorService.submit(this::forwardUDP);
+        this.serve(this::forwardUDP);
+    }
+
+    private void serve(Runnable service) {
+        this.services.add(this.executorService.submit(service));
     }
 
     public void listenTCP() {
         try {
-            System.out.println("server listen TCP :" + this.tcpPort);
+            Log.info("server listen TCP :" + this.tcpPort);
             while (!Thread.currentThread().isInterrupted()) {
                 TCPEndpoint tcpEndpoint = new TCPEndpoint(this.messageSocket.accept());
-                System.out.println("accept endpoint");
+                tcpEndpoint.setMaxMessageSize(this.config.getMaxMessageSize());
+                tcpEndpoint.setMetrics(this.metrics);
+                Log.info("accept endpoint");
                 TCPHandler tcpHandler = new TCPHandler(this, tcpEndpoint);
-                this.handle(tcpHandler);
+                this.connections.add(tcpEndpoint);
+                this.executorService.submit(() -> {
+                    try {
+                        tcpHandler.run();
+                    } finally {
+                        this.connections.remove(tcpEndpoint);
+                    }
+                });
             }
         } catch (IOException e) {
-            System.out.println("listen IO exception: " + e);
+            if (!this.isStopping())
+                Log.error("listen IO exception: " + e);
+        }
+    }
+
+    public void listenSelector() {
+        try {
+            Log.info("server listen TCP :" + this.tcpPort + " (" + this.eventLoops.length + " selectors)");
+            int next = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                SocketChannel socketChannel = this.messageChannel.accept();
+                Log.info("accept endpoint");
+                this.eventLoops[next].register(socketChannel);
+                next = (next + 1) % this.eventLoops.length;
+            }
+        } catch (IOException e) {
+            if (!this.isStopping())
+                Log.error("listen IO exception: " + e);
         }
     }
 
     public void forwardUDP() {
         try {
-            System.out.println("server forward UDP :" + this.udpPort);
+            Log.info("server forward UDP :" + this.udpPort);
             while (!Thread.currentThread().isInterrupted()) {
                 Address address = this.udpMultiplexer.read();
-                System.out.println("dispatch to endpoint -> " + address);
+                Log.debug(() -> "dispatch to endpoint -> " + address);
             }
         } catch (IOException e) {
-            System.out.println("forward IO exception: " + e);
+            if (!this.isStopping())
+                Log.error("forward IO exception: " + e);
         } finally {
             this.executorService.shutdown();
         }
     }
 
-    public void quit() {
+    public void dumpStats() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(this.config.getStatsIntervalMillis());
+                Log.info(() -> "stats: " + this.metrics.format());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getActiveHandlers() {
+        return this.metrics.counter(Handler.ACTIVE_HANDLERS).get();
+    }
+
+    public Optional<HistoryStore> getHistory() {
+        return Optional.ofNullable(this.history);
+    }
+
+    public Optional<Federation> getFederation() {
+        return Optional.ofNullable(this.federation);
+    }
+
+    public Optional<IdleReaper> getIdleReaper() {
+        return Optional.ofNullable(this.idleReaper);
+    }
+
+    public boolean isStopping() {
+        return this.isStopping.get();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        this.terminated.await();
+    }
+
+    public void stop() {
+        this.stop(ChatServer.stopTimeoutMillis);
+    }
+
+    public void stop(long timeoutMillis) {
+        if (!this.isStopping.compareAndSet(false, true))
+            return;
+        Log.info("server stopping");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Roster roster = this.userStore.roster();
+        Message notice = new Message("@sv", "stop", "server shutting down");
+        for (int i = 0; i < roster.size(); i++)
+            roster.get(i).getOutbound().ifPresent(outbound -> outbound.offer(notice));
+        for (int i = 0; i < roster.size(); i++)
+            roster.get(i).getOutbound().ifPresent(outbound -> outbound.awaitDrained(deadline));
+
+        try {
+            this.messageChannel.close();
+        } catch (IOException e) {
+            Log.warn("listen close IO exception: " + e);
+        }
+        this.udpMultiplexer.close();
+        if (this.federation != null)
+            this.federation.close();
+        for (TCPEndpoint endpoint : this.connections)
+            endpoint.shutdownInput();
+        for (Future<?> service : this.services)
+            service.cancel(true);
+
         this.executorService.shutdown();
+        try {
+            long remaining = deadline - System.nanoTime();
+            if (!this.executorService.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                Log.warn(() -> "handlers still running after " + timeoutMillis + " ms, interrupting");
+                this.executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (this.history != null)
+                this.history.close();
+            Log.info("server stopped");
+            this.terminated.countDown();
+        }
     }
 
     public Future<?> handle(Handler handler) {
         return this.executorService.submit(handler);
     }
+
+    public RateLimiter openLimiter() {
+        if (!this.config.usesRateLimit())
+            return RateLimiter.UNLIMITED;
+        return new RateLimiter(this.config.getMessagesPerSecond(),
+                this.config.getFramesPerSecond(),
+                this.config.getBytesPerSecond(),
+                ChatServer.rateBurstSeconds);
+    }
+
+    public OutboundQueue openOutbound(TCPEndpoint endpoint) {
+        return new OutboundQueue(endpoint, this.executorService,
+                this.config.getOutboundCapacity(),
+                this.config.getOutboundOverflow(),
+                this.config.getOutboundTimeoutMillis(),
+                this.config.getCoalesceBatch(),
+                this.config.getCoalesceLingerMicros());
+    }
+
+    private static final double rateBurstSeconds = 1;
+    private static final long stopTimeoutMillis = 5000;
 }
@@ -0,0 +1,314 @@
+package com.szymm.chat;
+
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.metrics.Histogram;
+import com.szymm.chat.misc.Pixmap;
+import com.szymm.chat.net.Address;
+import com.szymm.chat.net.Frame;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.Opcode;
+import com.szymm.chat.net.TCPEndpoint;
+import com.szymm.chat.net.UDPEndpoint;
+import com.szymm.chat.net.UDPMultiplexer;
+import com.szymm.chat.net.WireFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadGenerator {
+    private final String host;
+    private final int tcpPort;
+    private final int udpPort;
+    private final LoadProfile profile;
+    private final List<LoadUser> users;
+    private final ScheduledExecutorService scheduler;
+    private final String filler;
+    private final byte[] pixmapBytes;
+    private final Histogram tcpLatency;
+    private final Histogram udpLatency;
+    private final Histogram lsLatency;
+    private final Counter tcpSent;
+    private final Counter tcpDelivered;
+    private final Counter udpSent;
+    private final Counter udpDelivered;
+    private final Counter lsSent;
+    private final Counter errors;
+    private volatile boolean isRunning;
+    private long elapsedNanos;
+
+    public LoadGenerator(String host, int tcpPort, int udpPort, LoadProfile profile) {
+        this.host = host;
+        this.tcpPort = tcpPort;
+        this.udpPort = udpPort;
+        this.profile = profile;
+        this.users = new ArrayList<>(profile.getUsers());
+        this.scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        this.filler = "x".repeat(profile.getPayloadSize());
+        this.pixmapBytes = LoadGenerator.createPixmap().encode();
+        this.tcpLatency = new Histogram();
+        this.udpLatency = new Histogram();
+        this.lsLatency = new Histogram();
+        this.tcpSent = new Counter();
+        this.tcpDelivered = new Counter();
+        this.udpSent = new Counter();
+        this.udpDelivered = new Counter();
+        this.lsSent = new Counter();
+        this.errors = new Counter();
+        this.isRunning = false;
+        this.elapsedNanos = 0;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        this.isRunning = true;
+        for (int i = 0; i < this.profile.getUsers(); i++) {
+            LoadUser user = new LoadUser(i);
+            user.connect();
+            this.users.add(user);
+        }
+        Thread.sleep(LoadGenerator.settleMillis);
+
+        long start = System.nanoTime();
+        for (LoadUser user : this.users) {
+            this.schedule(this.profile.getPMRate(), user::sendPM);
+            this.schedule(this.profile.getDMRate(), user::sendDM);
+            this.schedule(this.profile.getLSRate(), user::sendLS);
+            this.schedule(this.profile.getPXMRate(), user::sendPXM);
+            this.schedule(LoadGenerator.heartbeatRate, user::sendPing);
+        }
+        Thread.sleep(this.profile.getDurationMillis());
+        this.scheduler.shutdownNow();
+        this.scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        this.elapsedNanos = System.nanoTime() - start;
+
+        Thread.sleep(LoadGenerator.settleMillis);
+        this.isRunning = false;
+        for (LoadUser user : this.users)
+            user.quit();
+    }
+
+    public String report() {
+        double seconds = this.elapsedNanos / 1e9;
+        return "load users=" + this.profile.getUsers()
+                + " duration=" + String.format("%.1fs", seconds)
+                + " rooms=" + this.profile.getRooms()
+                + " wire=" + this.profile.getWireFormat()
+                + " errors=" + this.errors.get()
+                + "\n" + LoadGenerator.line("tcp", this.tcpSent, this.tcpDelivered, this.tcpLatency, seconds)
+                + "\n" + LoadGenerator.line("udp", this.udpSent, this.udpDelivered, this.udpLatency, seconds)
+                + "\n" + LoadGenerator.line("ls ", this.lsSent, null, this.lsLatency, seconds);
+    }
+
+    private void schedule(double rate, Action action) {
+        if (rate <= 0)
+            return;
+        long period = (long) (1e9 / rate);
+        long delay = ThreadLocalRandom.current().nextLong(period);
+        AtomicLong intendedNanos = new AtomicLong(System.nanoTime() + delay);
+        this.scheduler.scheduleAtFixedRate(() -> {
+            try {
+                action.run(intendedNanos.getAndAdd(period));
+            } catch (IOException | RuntimeException e) {
+                this.errors.increment();
+            }
+        }, delay, period, TimeUnit.NANOSECONDS);
+    }
+
+    private static String line(String name, Counter sent, Counter delivered, Histogram latency, double seconds) {
+        long received = delivered == null ? latency.getCount() : delivered.get();
+        return name
+                + "  sent=" + sent.get()
+                + " delivered=" + received
+                + " throughput=" + String.format("%.0f/s", received / seconds)
+                + " p50=" + latency.percentile(0.50) + "us"
+                + " p99=" + latency.percentile(0.99) + "us"
+                + " p999=" + latency.percentile(0.999) + "us"
+                + " max=" + latency.getMax() + "us";
+    }
+
+    private static Pixmap createPixmap() {
+        byte size = 12;
+        byte[] pixels = new byte[size * size];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = (byte) ((i / size + i % size) % 4);
+        return new Pixmap(size, size, pixels, Pixmap.LUT_4W);
+    }
+
+    private static long micros(long sentNanos) {
+        return (System.nanoTime() - sentNanos) / 1000;
+    }
+
+    private class LoadUser {
+        private final int index;
+        private final String name;
+        private final Queue<Long> lsTimes;
+        private TCPEndpoint tcpEndpoint;
+        private UDPEndpoint udpEndpoint;
+        private UDPMultiplexer multiplexer;
+
+        private LoadUser(int index) {
+            this.index = index;
+            this.name = "load" + index;
+            this.lsTimes = new ConcurrentLinkedQueue<>();
+        }
+
+        private void connect() throws IOException {
+            this.tcpEndpoint = new TCPEndpoint(Address.of(LoadGenerator.this.host, LoadGenerator.this.tcpPort));
+            this.multiplexer = new UDPMultiplexer(4096);
+            this.multiplexer.setDispatcher(this::receiveFrame);
+            this.udpEndpoint = new UDPEndpoint(this.multiplexer, Address.of(LoadGenerator.this.host, LoadGenerator.this.udpPort));
+            if (LoadGenerator.this.profile.getWireFormat() == WireFormat.BINARY) {
+                new Message(this.name, "wire", "1").sendTo(this.tcpEndpoint);
+                Message response = Message.from(this.tcpEndpoint);
+                if (response.opcode == Opcode.WIRE && response.text.equals("1"))
+                    this.tcpEndpoint.setFormat(WireFormat.BINARY);
+            }
+            new Message(this.name, "join", "").sendTo(this.tcpEndpoint);
+            String portText = Integer.toString(this.multiplexer.getLocalAddress().port);
+            new Message(this.name, "+udp", portText).sendTo(this.tcpEndpoint);
+            int rooms = LoadGenerator.this.profile.getRooms();
+            if (rooms > 0)
+                new Message(this.name, "join-room", "room" + this.index % rooms).sendTo(this.tcpEndpoint);
+            LoadGenerator.startDaemon(this::listenTCP, this.name + "-tcp");
+            LoadGenerator.startDaemon(this::listenUDP, this.name + "-udp");
+        }
+
+        private void quit() {
+            try {
+                this.send(new Message(this.name, "quit", ""));
+            } catch (IOException ignored) {
+            }
+            this.tcpEndpoint.close();
+            this.udpEndpoint.close();
+            this.multiplexer.close();
+        }
+
+        private void sendPM(long intendedNanos) throws IOException {
+            String text = intendedNanos + " " + LoadGenerator.this.filler;
+            this.send(new Message(this.name, "pm", text));
+            LoadGenerator.this.tcpSent.increment();
+        }
+
+        private void sendDM(long intendedNanos) throws IOException {
+            int users = LoadGenerator.this.profile.getUsers();
+            int target = (this.index + 1 + ThreadLocalRandom.current().nextInt(users - 1)) % users;
+            String text = intendedNanos + " " + LoadGenerator.this.filler;
+            this.send(new Message(-1, this.name, "dm", "load" + target, text));
+            LoadGenerator.this.tcpSent.increment();
+        }
+
+        private void sendLS(long intendedNanos) throws IOException {
+            synchronized (this.tcpEndpoint) {
+                this.lsTimes.add(intendedNanos);
+                new Message(this.name, "ls", "").sendTo(this.tcpEndpoint);
+            }
+            LoadGenerator.this.lsSent.increment();
+        }
+
+        private void sendPing(long intendedNanos) throws IOException {
+            this.send(new Message(this.name, "ping", ""));
+        }
+
+        private void sendPXM(long intendedNanos) throws IOException {
+            byte[] pixmapBytes = LoadGenerator.this.pixmapBytes;
+            byte[] frameBytes = new byte[8 + pixmapBytes.length];
+            ByteBuffer.wrap(frameBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .putLong(intendedNanos)
+                    .put(pixmapBytes);
+            new Frame(frameBytes).sendTo(this.udpEndpoint);
+            LoadGenerator.this.udpSent.increment();
+        }
+
+        private void send(Message message) throws IOException {
+            synchronized (this.tcpEndpoint) {
+                message.sendTo(this.tcpEndpoint);
+            }
+        }
+
+        private void listenTCP() {
+            try {
+                while (LoadGenerator.this.isRunning) {
+                    Message message = Message.from(this.tcpEndpoint);
+                    switch (message.opcode) {
+                        case PM, DM -> this.receiveText(message);
+                        case LS -> this.receiveLS();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (LoadGenerator.this.isRunning)
+                    LoadGenerator.this.errors.increment();
+            }
+        }
+
+        private void listenUDP() {
+            try {
+                while (LoadGenerator.this.isRunning)
+                    this.multiplexer.read();
+            } catch (IOException e) {
+                if (LoadGenerator.this.isRunning)
+                    LoadGenerator.this.errors.increment();
+            }
+        }
+
+        private void receiveText(Message message) {
+            String text = message.text;
+            if (message.opcode == Opcode.DM && message.target.isEmpty())
+                text = text.substring(text.indexOf(':') + 1);
+            int space = text.indexOf(' ');
+            if (space <= 0)
+                return;
+            try {
+                long sentNanos = Long.parseLong(text, 0, space, 10);
+                LoadGenerator.this.tcpLatency.record(LoadGenerator.micros(sentNanos));
+                LoadGenerator.this.tcpDelivered.increment();
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        private void receiveLS() {
+            Long sentNanos = this.lsTimes.poll();
+            if (sentNanos != null)
+                LoadGenerator.this.lsLatency.record(LoadGenerator.micros(sentNanos));
+        }
+
+        private void receiveFrame(UDPEndpoint endpoint, byte[] datagram, int length) {
+            byte[] frameBytes = datagram;
+            if (Frame.isFragment(datagram, length)) {
+                frameBytes = endpoint.getAssembler().accept(datagram, length);
+                if (frameBytes == null)
+                    return;
+                length = frameBytes.length;
+            }
+            if (Frame.sizeOf(frameBytes, length) < 8)
+                return;
+            long sentNanos = ByteBuffer.wrap(frameBytes, 4, 8)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .getLong();
+            LoadGenerator.this.udpLatency.record(LoadGenerator.micros(sentNanos));
+            LoadGenerator.this.udpDelivered.increment();
+        }
+    }
+
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private interface Action {
+        void run(long intendedNanos) throws IOException;
+    }
+
+    private static final long settleMillis = 500;
+    private static final double heartbeatRate = 1.0 / 15;
+}
@@ -0,0 +1,122 @@
+package com.szymm.chat;
+
+import com.szymm.chat.net.WireFormat;
+
+public class LoadProfile {
+    private final int users;
+    private double pmRate;
+    private double dmRate;
+    private double lsRate;
+    private double pxmRate;
+    private int payloadSize;
+    private int rooms;
+    private long durationMillis;
+    private WireFormat wireFormat;
+
+    private LoadProfile(int users) {
+        this.users = users;
+        this.pmRate = 1;
+        this.dmRate = 1;
+        this.lsRate = 0.1;
+        this.pxmRate = 1;
+        this.payloadSize = 32;
+        this.rooms = 0;
+        this.durationMillis = 10_000;
+        this.wireFormat = WireFormat.BINARY;
+    }
+
+    private LoadProfile(LoadProfile other) {
+        this.users = other.users;
+        this.pmRate = other.pmRate;
+        this.dmRate = other.dmRate;
+        this.lsRate = other.lsRate;
+        this.pxmRate = other.pxmRate;
+        this.payloadSize = other.payloadSize;
+        this.rooms = other.rooms;
+        this.durationMillis = other.durationMillis;
+        this.wireFormat = other.wireFormat;
+    }
+
+    public static LoadProfile of(int users) {
+        if (users < 2)
+            throw new IllegalArgumentException("load needs at least two users");
+        return new LoadProfile(users);
+    }
+
+    public LoadProfile withRates(double pmRate, double dmRate, double lsRate, double pxmRate) {
+        if (pmRate < 0 || dmRate < 0 || lsRate < 0 || pxmRate < 0)
+            throw new IllegalArgumentException("negative rate");
+        LoadProfile profile = new LoadProfile(this);
+        profile.pmRate = pmRate;
+        profile.dmRate = dmRate;
+        profile.lsRate = lsRate;
+        profile.pxmRate = pxmRate;
+        return profile;
+    }
+
+    public LoadProfile withPayload(int payloadSize) {
+        if (payloadSize < 0)
+            throw new IllegalArgumentException("negative payload size");
+        LoadProfile profile = new LoadProfile(this);
+        profile.payloadSize = payloadSize;
+        return profile;
+    }
+
+    public LoadProfile withRooms(int rooms) {
+        if (rooms < 0)
+            throw new IllegalArgumentException("negative room count");
+        LoadProfile profile = new LoadProfile(this);
+        profile.rooms = rooms;
+        return profile;
+    }
+
+    public LoadProfile withDuration(long durationMillis) {
+        if (durationMillis <= 0)
+            throw new IllegalArgumentException("duration must be positive");
+        LoadProfile profile = new LoadProfile(this);
+        profile.durationMillis = durationMillis;
+        return profile;
+    }
+
+    public LoadProfile withWireFormat(WireFormat wireFormat) {
+        LoadProfile profile = new LoadProfile(this);
+        profile.wireFormat = wireFormat;
+        return profile;
+    }
+
+    public int getUsers() {
+        return this.users;
+    }
+
+    public double getPMRate() {
+        return this.pmRate;
+    }
+
+    public double getDMRate() {
+        return this.dmRate;
+    }
+
+    public double getLSRate() {
+        return this.lsRate;
+    }
+
+    public double getPXMRate() {
+        return this.pxmRate;
+    }
+
+    public int getPayloadSize() {
+        return this.payloadSize;
+    }
+
+    public int getRooms() {
+        return this.rooms;
+    }
+
+    public long getDurationMillis() {
+        return this.durationMillis;
+    }
+
+    public WireFormat getWireFormat() {
+        return this.wireFormat;
+    }
+}
@@ -0,0 +1,91 @@
+package com.szymm.chat;
+
+import com.szymm.chat.log.Level;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.net.WireFormat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RunLoad {
+    public static void main(String[] args) {
+        Map<String, String> options = RunLoad.parse(args);
+        int tcpPort = Integer.parseInt(options.getOrDefault("tcp", "15681"));
+        int udpPort = Integer.parseInt(options.getOrDefault("udp", "15682"));
+        Log.setLevel(Level.of(options.getOrDefault("log", "warn")));
+        try {
+            ServerConfig config = ServerConfig.of(tcpPort, udpPort)
+                    .withSelector(Integer.parseInt(options.getOrDefault("selector", "0")))
+                    .withVirtualThreads(Boolean.parseBoolean(options.getOrDefault("virtual", "false")))
+                    .withInlineUDP(Boolean.parseBoolean(options.getOrDefault("inline", "false")))
+                    .withCoalescing(Integer.parseInt(options.getOrDefault("batch", "1")), 0);
+            LoadProfile profile = LoadProfile.of(Integer.parseInt(options.getOrDefault("users", "50")))
+                    .withRates(
+                            Double.parseDouble(options.getOrDefault("pm", "1")),
+                            Double.parseDouble(options.getOrDefault("dm", "1")),
+                            Double.parseDouble(options.getOrDefault("ls", "0.1")),
+                            Double.parseDouble(options.getOrDefault("pxm", "1")))
+                    .withPayload(Integer.parseInt(options.getOrDefault("payload", "32")))
+                    .withRooms(Integer.parseInt(options.getOrDefault("rooms", "0")))
+                    .withDuration(Long.parseLong(options.getOrDefault("seconds", "10")) * 1000)
+                    .withWireFormat(options.getOrDefault("wire", "binary").equals("text") ? WireFormat.TEXT : WireFormat.BINARY);
+
+            if (!options.containsKey("compare")) {
+                System.out.println(RunLoad.run(config, profile));
+            } else {
+                for (String mode : List.of(options.get("compare").split(","))) {
+                    try {
+                        ServerConfig modeConfig = RunLoad.withMode(config, mode.trim());
+                        System.out.println("mode=" + mode + " " + RunLoad.run(modeConfig, profile));
+                    } catch (UnsupportedOperationException e) {
+                        System.out.println("mode=" + mode + " skipped: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException | UnsupportedOperationException e) {
+            System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(0);
+    }
+
+    private static String run(ServerConfig config, LoadProfile profile) throws IOException, InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int baseline = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        ChatServer chatServer = new ChatServer(config);
+        chatServer.start();
+        LoadGenerator loadGenerator = new LoadGenerator("localhost", config.getTCPPort(), config.getUDPPort(), profile);
+        loadGenerator.run();
+        int peak = threads.getPeakThreadCount() - baseline;
+        chatServer.stop();
+        return "threads=+" + peak + " " + loadGenerator.report();
+    }
+
+    private static ServerConfig withMode(ServerConfig config, String mode) {
+        int selectors = config.usesSelector()
+                ? config.getSelectorThreads()
+                : Runtime.getRuntime().availableProcessors();
+        return switch (mode) {
+            case "thread" -> config.withSelector(0).withVirtualThreads(false);
+            case "selector" -> config.withSelector(selectors).withVirtualThreads(false);
+            case "virtual" -> config.withSelector(0).withVirtualThreads(true);
+            default -> throw new IllegalArgumentException("unknown server mode: " + mode);
+        };
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2)
+                options.put(parts[0], parts[1]);
+        }
+        return options;
+    }
+}
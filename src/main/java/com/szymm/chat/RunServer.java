@@ -1,18 +1,65 @@
 package com.szymm.chat;
 
+import com.szymm.chat.net.Address;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class RunServer {
     public static void main(String[] args) {
+        Map<String, String> options = RunServer.parse(args);
+        int tcpPort = Integer.parseInt(options.getOrDefault("tcp", "15681"));
+        int udpPort = Integer.parseInt(options.getOrDefault("udp", "15682"));
         try {
-            ChatServer chatServer = new ChatServer(15681, 15682);
-            chatServer.startTCP();
-            chatServer.startUDP();
-            while (true) {
-
+            ServerConfig config = ServerConfig.of(tcpPort, udpPort);
+            if (options.containsKey("node")) {
+                int linkPort = Integer.parseInt(options.getOrDefault("link", "15683"));
+                config = config.withFederation(options.get("node"), linkPort,
+                        RunServer.parsePeers(options.getOrDefault("peers", "")));
+            }
+            if (options.containsKey("limit")) {
+                String[] limits = options.get("limit").split(",", 3);
+                if (limits.length < 3)
+                    throw new IllegalArgumentException("limit must be messages,frames,bytes per second");
+                config = config.withRateLimit(Integer.parseInt(limits[0].trim()),
+                        Integer.parseInt(limits[1].trim()), Long.parseLong(limits[2].trim()));
             }
-        } catch (IOException e) {
+            if (options.containsKey("idle"))
+                config = config.withIdleTimeout(Long.parseLong(options.get("idle")));
+            ChatServer chatServer = new ChatServer(config);
+            Runtime.getRuntime().addShutdownHook(new Thread(chatServer::stop, "server-stop"));
+            chatServer.start();
+            chatServer.awaitTermination();
+        } catch (IOException | IllegalArgumentException e) {
             System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2)
+                options.put(parts[0], parts[1]);
+        }
+        return options;
+    }
+
+    private static List<Address> parsePeers(String text) throws IOException {
+        List<Address> peers = new ArrayList<>();
+        for (String peer : text.split(",")) {
+            if (peer.isBlank())
+                continue;
+            String[] parts = peer.trim().split(":", 2);
+            if (parts.length < 2)
+                throw new IllegalArgumentException("peer must be host:port: " + peer);
+            peers.add(Address.of(parts[0], Integer.parseInt(parts[1])));
         }
+        return peers;
     }
 }
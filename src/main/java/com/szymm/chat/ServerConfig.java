@@ -0,0 +1,275 @@
+package com.szymm.chat;
+
+import com.szymm.chat.net.Address;
+import com.szymm.chat.user.OutboundQueue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class ServerConfig {
+    private final int tcpPort;
+    private final int udpPort;
+    private int selectorThreads;
+    private boolean virtualThreads;
+    private boolean inlineUDP;
+    private int outboundCapacity;
+    private OutboundQueue.Overflow outboundOverflow;
+    private long outboundTimeoutMillis;
+    private int coalesceBatch;
+    private long coalesceLingerMicros;
+    private long statsIntervalMillis;
+    private Path historyDirectory;
+    private String nodeId;
+    private int federationPort;
+    private List<Address> peers;
+    private int messagesPerSecond;
+    private int framesPerSecond;
+    private long bytesPerSecond;
+    private long idleTimeoutMillis;
+    private int maxMessageSize;
+
+    private ServerConfig(int tcpPort, int udpPort) {
+        this.tcpPort = tcpPort;
+        this.udpPort = udpPort;
+        this.selectorThreads = 0;
+        this.virtualThreads = false;
+        this.inlineUDP = false;
+        this.outboundCapacity = 256;
+        this.outboundOverflow = OutboundQueue.Overflow.DROP_OLDEST;
+        this.outboundTimeoutMillis = 0;
+        this.coalesceBatch = 1;
+        this.coalesceLingerMicros = 0;
+        this.statsIntervalMillis = 0;
+        this.historyDirectory = null;
+        this.nodeId = null;
+        this.federationPort = 0;
+        this.peers = List.of();
+        this.messagesPerSecond = 0;
+        this.framesPerSecond = 0;
+        this.bytesPerSecond = 0;
+        this.idleTimeoutMillis = 0;
+        this.maxMessageSize = 1 << 16;
+    }
+
+    private ServerConfig(ServerConfig other) {
+        this.tcpPort = other.tcpPort;
+        this.udpPort = other.udpPort;
+        this.selectorThreads = other.selectorThreads;
+        this.virtualThreads = other.virtualThreads;
+        this.inlineUDP = other.inlineUDP;
+        this.outboundCapacity = other.outboundCapacity;
+        this.outboundOverflow = other.outboundOverflow;
+        this.outboundTimeoutMillis = other.outboundTimeoutMillis;
+        this.coalesceBatch = other.coalesceBatch;
+        this.coalesceLingerMicros = other.coalesceLingerMicros;
+        this.statsIntervalMillis = other.statsIntervalMillis;
+        this.historyDirectory = other.historyDirectory;
+        this.nodeId = other.nodeId;
+        this.federationPort = other.federationPort;
+        this.peers = other.peers;
+        this.messagesPerSecond = other.messagesPerSecond;
+        this.framesPerSecond = other.framesPerSecond;
+        this.bytesPerSecond = other.bytesPerSecond;
+        this.idleTimeoutMillis = other.idleTimeoutMillis;
+        this.maxMessageSize = other.maxMessageSize;
+    }
+
+    public static ServerConfig of(int tcpPort, int udpPort) {
+        return new ServerConfig(tcpPort, udpPort);
+    }
+
+    public ServerConfig withSelector(int selectorThreads) {
+        if (selectorThreads < 0)
+            throw new IllegalArgumentException("negative selector thread count");
+        ServerConfig config = new ServerConfig(this);
+        config.selectorThreads = selectorThreads;
+        return config;
+    }
+
+    public ServerConfig withVirtualThreads(boolean virtualThreads) {
+        ServerConfig config = new ServerConfig(this);
+        config.virtualThreads = virtualThreads;
+        return config;
+    }
+
+    public ServerConfig withInlineUDP(boolean inlineUDP) {
+        ServerConfig config = new ServerConfig(this);
+        config.inlineUDP = inlineUDP;
+        return config;
+    }
+
+    public ServerConfig withOutbound(int capacity, OutboundQueue.Overflow overflow, long timeoutMillis) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("outbound capacity must be positive");
+        if (timeoutMillis < 0)
+            throw new IllegalArgumentException("negative outbound timeout");
+        ServerConfig config = new ServerConfig(this);
+        config.outboundCapacity = capacity;
+        config.outboundOverflow = overflow;
+        config.outboundTimeoutMillis = timeoutMillis;
+        return config;
+    }
+
+    public ServerConfig withCoalescing(int maxBatch, long lingerMicros) {
+        if (maxBatch <= 0)
+            throw new IllegalArgumentException("batch size must be positive");
+        if (lingerMicros < 0)
+            throw new IllegalArgumentException("negative linger");
+        ServerConfig config = new ServerConfig(this);
+        config.coalesceBatch = maxBatch;
+        config.coalesceLingerMicros = lingerMicros;
+        return config;
+    }
+
+    public ServerConfig withStatsDump(long intervalMillis) {
+        if (intervalMillis < 0)
+            throw new IllegalArgumentException("negative stats interval");
+        ServerConfig config = new ServerConfig(this);
+        config.statsIntervalMillis = intervalMillis;
+        return config;
+    }
+
+    public ServerConfig withHistory(Path historyDirectory) {
+        ServerConfig config = new ServerConfig(this);
+        config.historyDirectory = historyDirectory;
+        return config;
+    }
+
+    public ServerConfig withFederation(String nodeId, int port, List<Address> peers) {
+        if (nodeId.isEmpty())
+            throw new IllegalArgumentException("empty node id");
+        if (port <= 0)
+            throw new IllegalArgumentException("federation port must be positive");
+        ServerConfig config = new ServerConfig(this);
+        config.nodeId = nodeId;
+        config.federationPort = port;
+        config.peers = List.copyOf(peers);
+        return config;
+    }
+
+    public ServerConfig withRateLimit(int messagesPerSecond, int framesPerSecond, long bytesPerSecond) {
+        if (messagesPerSecond < 0 || framesPerSecond < 0 || bytesPerSecond < 0)
+            throw new IllegalArgumentException("negative rate limit");
+        ServerConfig config = new ServerConfig(this);
+        config.messagesPerSecond = messagesPerSecond;
+        config.framesPerSecond = framesPerSecond;
+        config.bytesPerSecond = bytesPerSecond;
+        return config;
+    }
+
+    public ServerConfig withIdleTimeout(long idleTimeoutMillis) {
+        if (idleTimeoutMillis < 0)
+            throw new IllegalArgumentException("negative idle timeout");
+        ServerConfig config = new ServerConfig(this);
+        config.idleTimeoutMillis = idleTimeoutMillis;
+        return config;
+    }
+
+    public ServerConfig withMaxMessageSize(int maxMessageSize) {
+        if (maxMessageSize <= 0 || maxMessageSize > Integer.MAX_VALUE - 4)
+            throw new IllegalArgumentException("max message size out of range");
+        ServerConfig config = new ServerConfig(this);
+        config.maxMessageSize = maxMessageSize;
+        return config;
+    }
+
+    public int getTCPPort() {
+        return this.tcpPort;
+    }
+
+    public int getUDPPort() {
+        return this.udpPort;
+    }
+
+    public int getSelectorThreads() {
+        return this.selectorThreads;
+    }
+
+    public boolean usesSelector() {
+        return this.selectorThreads > 0;
+    }
+
+    public boolean usesVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    public boolean usesInlineUDP() {
+        return this.inlineUDP;
+    }
+
+    public int getOutboundCapacity() {
+        return this.outboundCapacity;
+    }
+
+    public OutboundQueue.Overflow getOutboundOverflow() {
+        return this.outboundOverflow;
+    }
+
+    public long getOutboundTimeoutMillis() {
+        return this.outboundTimeoutMillis;
+    }
+
+    public int getCoalesceBatch() {
+        return this.coalesceBatch;
+    }
+
+    public long getCoalesceLingerMicros() {
+        return this.coalesceLingerMicros;
+    }
+
+    public long getStatsIntervalMillis() {
+        return this.statsIntervalMillis;
+    }
+
+    public boolean usesHistory() {
+        return this.historyDirectory != null;
+    }
+
+    public Path getHistoryDirectory() {
+        return this.historyDirectory;
+    }
+
+    public boolean usesFederation() {
+        return this.nodeId != null;
+    }
+
+    public String getNodeId() {
+        return this.nodeId;
+    }
+
+    public int getFederationPort() {
+        return this.federationPort;
+    }
+
+    public List<Address> getPeers() {
+        return this.peers;
+    }
+
+    public boolean usesRateLimit() {
+        return this.messagesPerSecond > 0 || this.framesPerSecond > 0 || this.bytesPerSecond > 0;
+    }
+
+    public int getMessagesPerSecond() {
+        return this.messagesPerSecond;
+    }
+
+    public int getFramesPerSecond() {
+        return this.framesPerSecond;
+    }
+
+    public long getBytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    public boolean usesIdleTimeout() {
+        return this.idleTimeoutMillis > 0;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return this.idleTimeoutMillis;
+    }
+
+    public int getMaxMessageSize() {
+        return this.maxMessageSize;
+    }
+}
@@ -0,0 +1,250 @@
+package com.szymm.chat.federation;
+
+import com.szymm.chat.ChatServer;
+import com.szymm.chat.ServerConfig;
+import com.szymm.chat.handler.PeerHandler;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.net.Address;
+import com.szymm.chat.net.Frame;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.TCPEndpoint;
+import com.szymm.chat.user.Roster;
+import com.szymm.chat.user.User;
+import com.szymm.chat.user.UserStore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+public class Federation implements UserStore.Listener {
+    private final ChatServer server;
+    private final Executor executor;
+    private final String nodeId;
+    private final int port;
+    private final List<Address> peers;
+    private final ServerSocket linkSocket;
+    private final Map<String, PeerLink> links;
+    private final Map<Address, PeerLink> dialed;
+    private final Map<Address, String> peerIds;
+    private final Map<String, PeerLink> remoteUsers;
+    private final Counter recordsOut;
+
+    public Federation(ChatServer server, ServerConfig config, Executor executor) throws IOException {
+        this.server = server;
+        this.executor = executor;
+        this.nodeId = config.getNodeId();
+        this.port = config.getFederationPort();
+        this.peers = config.getPeers();
+        this.linkSocket = new ServerSocket();
+        this.linkSocket.bind(new InetSocketAddress(this.port));
+        this.links = new ConcurrentHashMap<>();
+        this.dialed = new ConcurrentHashMap<>();
+        this.peerIds = new ConcurrentHashMap<>();
+        this.remoteUsers = new ConcurrentHashMap<>();
+        this.recordsOut = server.metrics.counter("federation.records.out");
+        server.metrics.gauge("federation.peers", this.links::size);
+        server.metrics.gauge("federation.remote", this.remoteUsers::size);
+    }
+
+    public void listen() {
+        try {
+            Log.info("node " + this.nodeId + " listen federation :" + this.port);
+            while (!Thread.currentThread().isInterrupted()) {
+                TCPEndpoint endpoint = new TCPEndpoint(this.linkSocket.accept());
+                endpoint.setMetrics(this.server.metrics);
+                Log.info(() -> "accept peer link -> " + endpoint.getRemoteAddress());
+                PeerLink link = new PeerLink(endpoint, this.executor, null);
+                this.server.handle(new PeerHandler(this.server, this, link));
+            }
+        } catch (IOException e) {
+            if (!this.linkSocket.isClosed())
+                Log.error("federation listen IO exception: " + e);
+        }
+    }
+
+    public void dial() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                for (Address peer : this.peers) {
+                    if (!this.isLinked(peer))
+                        this.connect(peer);
+                }
+                Thread.sleep(Federation.redialMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isLinked(Address peer) {
+        PeerLink link = this.dialed.get(peer);
+        if (link != null && link.isUp())
+            return true;
+        String peerId = this.peerIds.get(peer);
+        return peerId != null && this.links.containsKey(peerId);
+    }
+
+    private void connect(Address peer) {
+        try {
+            TCPEndpoint endpoint = new TCPEndpoint(peer);
+            endpoint.setMetrics(this.server.metrics);
+            PeerLink link = new PeerLink(endpoint, this.executor, peer);
+            link.sendNow(PeerRecord.encode(PeerRecord.Kind.HELLO, this.nodeId));
+            this.dialed.put(peer, link);
+            Log.info(() -> "dial peer link -> " + peer);
+            this.server.handle(new PeerHandler(this.server, this, link));
+        } catch (IOException e) {
+            Log.debug(() -> "peer unreachable -> " + peer + ": " + e.getMessage());
+        }
+    }
+
+    public void greet(PeerLink link, String peerId) throws IOException {
+        if (link.isDialed())
+            this.peerIds.put(link.getPeer(), peerId);
+        else
+            link.sendNow(PeerRecord.encode(PeerRecord.Kind.HELLO, this.nodeId));
+    }
+
+    public synchronized boolean register(PeerLink link, String peerId) {
+        if (peerId.equals(this.nodeId)) {
+            Log.warn("peer link to self -> " + link.getRemoteAddress());
+            link.close();
+            return false;
+        }
+        PeerLink current = this.links.get(peerId);
+        if (current != null && current != link) {
+            boolean keepsNew = link.isDialed() == this.nodeId.compareTo(peerId) < 0;
+            if (!keepsNew) {
+                link.close();
+                return false;
+            }
+            this.drop(current);
+        }
+        link.bindNodeId(peerId);
+        this.links.put(peerId, link);
+        Roster roster = this.server.userStore.roster();
+        for (int i = 0; i < roster.size(); i++)
+            link.send(PeerRecord.encode(PeerRecord.Kind.USER_UP, roster.get(i).name));
+        Log.info(() -> "node " + peerId + " linked -> " + link.getRemoteAddress());
+        return true;
+    }
+
+    public synchronized void drop(PeerLink link) {
+        link.close();
+        Optional<String> peerId = link.getNodeId();
+        if (peerId.isEmpty() || !this.links.remove(peerId.get(), link))
+            return;
+        for (String name : link.users())
+            this.remoteUsers.remove(name, link);
+        link.users().clear();
+        Log.info(() -> "node " + peerId.get() + " unlinked");
+    }
+
+    public void userUp(PeerLink link, String name) {
+        if (!this.isRegistered(link))
+            return;
+        link.users().add(name);
+        this.remoteUsers.put(name, link);
+    }
+
+    public void userDown(PeerLink link, String name) {
+        link.users().remove(name);
+        this.remoteUsers.remove(name, link);
+    }
+
+    private boolean isRegistered(PeerLink link) {
+        return link.getNodeId()
+                .map(peerId -> this.links.get(peerId) == link)
+                .orElse(false);
+    }
+
+    @Override
+    public synchronized void joined(User user) {
+        this.broadcast(PeerRecord.encode(PeerRecord.Kind.USER_UP, user.name));
+    }
+
+    @Override
+    public synchronized void left(User user) {
+        this.broadcast(PeerRecord.encode(PeerRecord.Kind.USER_DOWN, user.name));
+    }
+
+    public boolean isRemote(String name) {
+        return this.remoteUsers.containsKey(name);
+    }
+
+    public List<String> remoteNames() {
+        return new ArrayList<>(this.remoteUsers.keySet());
+    }
+
+    public void forwardPM(String room, Message message) {
+        if (this.links.isEmpty())
+            return;
+        this.broadcast(PeerRecord.encode(PeerRecord.Kind.PM, room, message));
+    }
+
+    public boolean forwardDM(Message message) {
+        PeerLink link = this.remoteUsers.get(message.target);
+        if (link == null)
+            return false;
+        link.send(PeerRecord.encode(PeerRecord.Kind.DM, "", message));
+        this.recordsOut.increment();
+        return true;
+    }
+
+    public void forwardFrame(String room, byte[] datagram, int length, boolean reliable) {
+        if (this.links.isEmpty())
+            return;
+        PeerRecord.Kind kind = reliable ? PeerRecord.Kind.RELIABLE_FRAME : PeerRecord.Kind.FRAME;
+        this.broadcast(PeerRecord.encode(kind, room, datagram, 0, length));
+    }
+
+    public void forwardFrame(String room, Frame frame) {
+        if (this.links.isEmpty())
+            return;
+        byte[] datagram = new byte[frame.size + 4];
+        datagram[0] = (byte) frame.size;
+        datagram[1] = (byte) (frame.size >>> 8);
+        datagram[2] = (byte) (frame.size >>> 16);
+        datagram[3] = (byte) (frame.size >>> 24);
+        System.arraycopy(frame.bytes, 0, datagram, 4, frame.size);
+        this.forwardFrame(room, datagram, datagram.length, frame.reliable);
+    }
+
+    private void broadcast(byte[] record) {
+        Collection<PeerLink> links = this.links.values();
+        for (PeerLink link : links) {
+            link.send(record);
+            this.recordsOut.increment();
+        }
+    }
+
+    public String getNodeId() {
+        return this.nodeId;
+    }
+
+    public int getPeerCount() {
+        return this.links.size();
+    }
+
+    public void close() {
+        try {
+            this.linkSocket.close();
+        } catch (IOException e) {
+            Log.warn("federation close IO exception: " + e);
+        }
+        for (PeerLink link : this.links.values())
+            this.drop(link);
+        for (PeerLink link : this.dialed.values())
+            link.close();
+    }
+
+    private static final long redialMillis = 1000;
+}
@@ -0,0 +1,72 @@
+package com.szymm.chat.federation;
+
+import com.szymm.chat.net.Address;
+import com.szymm.chat.net.TCPEndpoint;
+import com.szymm.chat.user.OutboundQueue;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+public class PeerLink {
+    public final TCPEndpoint endpoint;
+    private final OutboundQueue outbound;
+    private final Address peer;
+    private final Set<String> users;
+    private volatile String nodeId;
+
+    PeerLink(TCPEndpoint endpoint, Executor executor, Address peer) {
+        this.endpoint = endpoint;
+        this.outbound = new OutboundQueue(endpoint, executor, PeerLink.capacity,
+                OutboundQueue.Overflow.DISCONNECT, 0, PeerLink.maxBatch, 0);
+        this.peer = peer;
+        this.users = ConcurrentHashMap.newKeySet();
+        this.nodeId = null;
+    }
+
+    void bindNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Optional<String> getNodeId() {
+        return Optional.ofNullable(this.nodeId);
+    }
+
+    public boolean isDialed() {
+        return this.peer != null;
+    }
+
+    Address getPeer() {
+        return this.peer;
+    }
+
+    public boolean isUp() {
+        return this.endpoint.isUp() && !this.outbound.isClosed();
+    }
+
+    public Address getRemoteAddress() {
+        return this.endpoint.getRemoteAddress();
+    }
+
+    Set<String> users() {
+        return this.users;
+    }
+
+    void send(byte[] record) {
+        this.outbound.offer(record);
+    }
+
+    void sendNow(byte[] record) throws IOException {
+        this.endpoint.send(record);
+    }
+
+    void close() {
+        this.outbound.close();
+        this.endpoint.close();
+    }
+
+    private static final int capacity = 4096;
+    private static final int maxBatch = 64;
+}
@@ -0,0 +1,103 @@
+package com.szymm.chat.federation;
+
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.TCPEndpoint;
+import com.szymm.chat.net.WireFormat;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+public class PeerRecord {
+    public final Kind kind;
+    public final String key;
+    public final byte[] payload;
+
+    private PeerRecord(Kind kind, String key, byte[] payload) {
+        this.kind = kind;
+        this.key = key;
+        this.payload = payload;
+    }
+
+    public static PeerRecord from(TCPEndpoint endpoint) throws IOException {
+        byte[] sizeBytes = endpoint.read(4);
+        if (sizeBytes.length < 4)
+            throw new IOException("peer link closed");
+        int size = PeerRecord.intAt(sizeBytes, 0);
+        if (size < 3 || size > PeerRecord.maxSize)
+            throw new IllegalArgumentException("bad peer record size: " + size);
+        byte[] bytes = endpoint.read(size);
+        if (bytes.length < size)
+            throw new IOException("peer link closed");
+        Kind kind = Kind.of(bytes[0]);
+        int keyLength = (bytes[1] & 0xff) | (bytes[2] & 0xff) << 8;
+        String key = new String(bytes, 3, keyLength, PeerRecord.charset);
+        byte[] payload = new byte[size - 3 - keyLength];
+        System.arraycopy(bytes, 3 + keyLength, payload, 0, payload.length);
+        return new PeerRecord(kind, key, payload);
+    }
+
+    public Message toMessage() {
+        return Message.from(this.payload);
+    }
+
+    static byte[] encode(Kind kind, String key) {
+        return PeerRecord.encode(kind, key, PeerRecord.empty, 0, 0);
+    }
+
+    static byte[] encode(Kind kind, String key, Message message) {
+        byte[] messageBytes = message.encode(WireFormat.BINARY);
+        return PeerRecord.encode(kind, key, messageBytes, 4, messageBytes.length - 4);
+    }
+
+    static byte[] encode(Kind kind, String key, byte[] payload, int offset, int length) {
+        byte[] keyBytes = key.getBytes(PeerRecord.charset);
+        int size = 3 + keyBytes.length + length;
+        byte[] bytes = new byte[size + 4];
+        bytes[0] = (byte) size;
+        bytes[1] = (byte) (size >>> 8);
+        bytes[2] = (byte) (size >>> 16);
+        bytes[3] = (byte) (size >>> 24);
+        bytes[4] = (byte) kind.code;
+        bytes[5] = (byte) keyBytes.length;
+        bytes[6] = (byte) (keyBytes.length >>> 8);
+        System.arraycopy(keyBytes, 0, bytes, 7, keyBytes.length);
+        System.arraycopy(payload, offset, bytes, 7 + keyBytes.length, length);
+        return bytes;
+    }
+
+    private static int intAt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    public enum Kind {
+        HELLO(0),
+        USER_UP(1),
+        USER_DOWN(2),
+        PM(3),
+        DM(4),
+        FRAME(5),
+        RELIABLE_FRAME(6);
+
+        public final int code;
+
+        Kind(int code) {
+            this.code = code;
+        }
+
+        static Kind of(byte code) {
+            if (code < 0 || code >= Kind.values.length)
+                throw new IllegalArgumentException("unknown peer record kind: " + code);
+            return Kind.values[code];
+        }
+
+        private static final Kind[] values = Kind.values();
+    }
+
+    private static final Charset charset = StandardCharsets.UTF_8;
+    private static final byte[] empty = new byte[0];
+    private static final int maxSize = 1 << 24;
+}
@@ -2,48 +2,69 @@ package com.szymm.chat.handler;
 
 import com.szymm.chat.net.Address;
 import com.szymm.chat.ChatServer;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.user.User;
 import com.szymm.chat.user.UserStore;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Counter;
 
 import java.io.IOException;
 
 public abstract class Handler implements Runnable {
     protected final ChatServer server;
     protected final UserStore userStore;
+    private final Counter activeHandlers;
 
     public Handler(ChatServer server) {
         this.server = server;
         this.userStore = server.userStore;
+        this.activeHandlers = server.metrics.counter(Handler.ACTIVE_HANDLERS);
     }
 
     protected abstract void handle() throws HandlerException, IOException;
     protected abstract Address getAddress();
 
+    protected void close() {
+    }
+
     @Override
     public final void run() {
-        System.out.println("start handler -> " + this.getAddress());
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                this.handle();
-            } catch (HandlerException e) {
-                if (e.event == HandlerEvent.STOP) {
-                    System.out.println("ev -> close handler");
+        Log.info(() -> "start handler -> " + this.getAddress());
+        this.activeHandlers.increment();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    this.handle();
+                } catch (HandlerException e) {
+                    if (Handler.shouldClose(e))
+                        break;
+                } catch (IOException e) {
+                    Log.info("io: " + e);
+                    Log.info("close handler");
                     break;
                 }
-                if (e.event == HandlerEvent.WARN) {
-                    System.out.println("ev -> warn: " + e);
-                }
-                if (e.event == HandlerEvent.FATAL) {
-                    System.out.println("ev -> fatal:" + e);
-                    break;
-                }
-            } catch (IOException e) {
-                System.out.println("io: " + e);
-                System.out.println("close handler");
-                break;
             }
+        } finally {
+            this.close();
+            this.activeHandlers.decrement();
         }
     }
 
+    protected static boolean shouldClose(HandlerException e) {
+        if (e.event == HandlerEvent.STOP) {
+            Log.info("ev -> close handler");
+            return true;
+        }
+        if (e.event == HandlerEvent.WARN) {
+            Log.warn(() -> "ev -> warn: " + e);
+        }
+        if (e.event == HandlerEvent.FATAL) {
+            Log.error("ev -> fatal:" + e);
+            return true;
+        }
+        return false;
+    }
+
     protected static void signalStop() throws HandlerException {
         throw new HandlerException(HandlerEvent.STOP, "stop");
     }
@@ -65,4 +86,14 @@ public abstract class Handler implements Runnable {
         String message = throwable.toString();
         Handler.signalFatal(message);
     }
-}
\ No newline at end of file
+
+    static void notifyLimited(User user, String type) {
+        if (!user.getLimiter().shouldNotify())
+            return;
+        Log.info(() -> "rate limited: " + user.name + ": " + type);
+        Message notice = new Message("@sv", "rate", type + " dropped, over rate limit");
+        user.getOutbound().ifPresent(outbound -> outbound.offer(notice));
+    }
+
+    public static final String ACTIVE_HANDLERS = "handlers.active";
+}
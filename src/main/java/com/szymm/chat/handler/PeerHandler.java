@@ -0,0 +1,141 @@
+package com.szymm.chat.handler;
+
+import com.szymm.chat.ChatServer;
+import com.szymm.chat.federation.Federation;
+import com.szymm.chat.federation.PeerLink;
+import com.szymm.chat.federation.PeerRecord;
+import com.szymm.chat.net.Address;
+import com.szymm.chat.net.Frame;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.TCPEndpoint;
+import com.szymm.chat.net.UDPEndpoint;
+import com.szymm.chat.user.OutboundQueue;
+import com.szymm.chat.user.Roster;
+import com.szymm.chat.user.User;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Counter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+public class PeerHandler extends Handler {
+    private final Federation federation;
+    private final PeerLink link;
+    private final Counter recordsIn;
+
+    public PeerHandler(ChatServer server, Federation federation, PeerLink link) {
+        super(server);
+        this.federation = federation;
+        this.link = link;
+        this.recordsIn = server.metrics.counter("federation.records.in");
+    }
+
+    @Override
+    public void handle() throws HandlerException, IOException {
+        PeerRecord record;
+        try {
+            record = PeerRecord.from(this.link.endpoint);
+        } catch (IOException e) {
+            this.federation.drop(this.link);
+            throw e;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            this.federation.drop(this.link);
+            Handler.signalFatal("malformed peer record: " + e);
+            return;
+        }
+        this.recordsIn.increment();
+        switch (record.kind) {
+            case HELLO -> this.handleHello(record);
+            case USER_UP -> this.federation.userUp(this.link, record.key);
+            case USER_DOWN -> this.federation.userDown(this.link, record.key);
+            case PM -> this.handlePM(record);
+            case DM -> this.handleDM(record);
+            case FRAME -> this.handleFrame(record, false);
+            case RELIABLE_FRAME -> this.handleFrame(record, true);
+        }
+    }
+
+    @Override
+    protected Address getAddress() {
+        return this.link.getRemoteAddress();
+    }
+
+    private void sendMessage(User user, Message message) {
+        try {
+            Optional<OutboundQueue> outbound = user.getOutbound();
+            if (outbound.isPresent()) {
+                outbound.get().offer(message);
+                return;
+            }
+            Optional<TCPEndpoint> tcpEndpoint = user.getTCP();
+            if (tcpEndpoint.isPresent())
+                message.sendTo(tcpEndpoint.get());
+        } catch (IOException e) {
+            Log.warn(() -> "peer delivery IO exception: " + user.name + ": " + e);
+        }
+    }
+
+    private void sendFrame(User user, byte[] datagram, Frame frame, boolean reliable) {
+        Optional<UDPEndpoint> udpEndpoint = user.getUDP();
+        if (udpEndpoint.isEmpty())
+            return;
+        try {
+            if (frame != null)
+                frame.sendTo(udpEndpoint.get());
+            else if (reliable)
+                udpEndpoint.get().sendReliable(datagram, datagram.length);
+            else
+                udpEndpoint.get().send(datagram, datagram.length);
+        } catch (IOException e) {
+            Log.warn(() -> "peer frame IO exception: " + user.name + ": " + e);
+        }
+    }
+
+    private void handleHello(PeerRecord record) throws HandlerException {
+        String peerId = record.key;
+        Log.info(() -> "peer hello: " + peerId + " -> " + this.getAddress());
+        if (peerId.isEmpty() || this.link.getNodeId().isPresent())
+            Handler.signalWarn("unexpected peer hello: " + peerId);
+        try {
+            this.federation.greet(this.link, peerId);
+        } catch (IOException e) {
+            this.federation.drop(this.link);
+            Handler.signalFatal(e);
+        }
+        if (!this.federation.register(this.link, peerId))
+            Handler.signalStop();
+    }
+
+    private void handlePM(PeerRecord record) {
+        Message message = record.toMessage().withSenderId(-1);
+        Log.debug(() -> "peer pm: " + message.origin + ": " + message.text);
+        Roster roster = this.userStore.rooms().members(record.key);
+        for (int i = 0; i < roster.size(); i++)
+            this.sendMessage(roster.get(i), message);
+        if (record.key.isEmpty())
+            this.server.getHistory().ifPresent(history -> history.append(message));
+    }
+
+    private void handleDM(PeerRecord record) throws HandlerException {
+        Message message = record.toMessage().withSenderId(-1);
+        Log.debug(() -> "peer dm: " + message.origin + "->" + message.target + ": " + message.text);
+        try {
+            User user = this.userStore.find(message.target);
+            this.sendMessage(user, message);
+            this.server.getHistory().ifPresent(history -> history.append(message));
+        } catch (NoSuchElementException e) {
+            Handler.signalWarn(e);
+        }
+    }
+
+    private void handleFrame(PeerRecord record, boolean reliable) {
+        byte[] datagram = record.payload;
+        boolean isWhole = datagram.length <= Frame.MAX_DATAGRAM || Frame.isFragment(datagram, datagram.length);
+        Frame frame = isWhole ? null : new Frame(Arrays.copyOfRange(datagram, 4, datagram.length), reliable);
+        Roster roster = this.userStore.rooms().members(record.key);
+        for (int i = 0; i < roster.size(); i++)
+            this.sendFrame(roster.get(i), datagram, frame, reliable);
+    }
+}
@@ -0,0 +1,162 @@
+package com.szymm.chat.handler;
+
+import com.szymm.chat.ChatServer;
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.TCPChannel;
+import com.szymm.chat.log.Log;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class TCPEventLoop implements Runnable {
+    private final ChatServer server;
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels;
+    private final Queue<TCPChannel> pendingWrites;
+    private final Counter activeHandlers;
+    private final int maxMessageSize;
+
+    public TCPEventLoop(ChatServer server, int maxMessageSize) throws IOException {
+        this.server = server;
+        this.maxMessageSize = maxMessageSize;
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.activeHandlers = server.metrics.counter(Handler.ACTIVE_HANDLERS);
+    }
+
+    public void register(SocketChannel socketChannel) {
+        this.pendingChannels.add(socketChannel);
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        Log.info("start event loop");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                this.selector.select();
+                this.registerPending();
+                this.updateWriteInterest();
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    this.process(key);
+                }
+            }
+        } catch (IOException e) {
+            Log.error("event loop IO exception: " + e);
+        } finally {
+            this.closeAll();
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel socketChannel;
+        while ((socketChannel = this.pendingChannels.poll()) != null) {
+            try {
+                TCPChannel channel = new TCPChannel(socketChannel, this.maxMessageSize, this::requestWrite);
+                channel.endpoint.setMetrics(this.server.metrics);
+                TCPHandler handler = new TCPHandler(this.server, channel.endpoint);
+                socketChannel.register(this.selector, SelectionKey.OP_READ, new Connection(channel, handler));
+                this.activeHandlers.increment();
+                Log.info(() -> "start handler -> " + channel.endpoint.getRemoteAddress());
+            } catch (IOException e) {
+                Log.warn("register IO exception: " + e);
+            }
+        }
+    }
+
+    private void requestWrite(TCPChannel channel) {
+        this.pendingWrites.add(channel);
+        this.selector.wakeup();
+    }
+
+    private void updateWriteInterest() {
+        TCPChannel channel;
+        while ((channel = this.pendingWrites.poll()) != null) {
+            SelectionKey key = channel.channel.keyFor(this.selector);
+            if (key != null && key.isValid())
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void process(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                boolean isOpen = connection.channel.read(connection::receive);
+                if (!isOpen || connection.isClosing) {
+                    this.close(key, connection);
+                    return;
+                }
+            }
+            if (key.isValid() && key.isWritable()) {
+                if (connection.channel.flush())
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            Log.info("io: " + e);
+            this.close(key, connection);
+        } catch (RuntimeException e) {
+            Log.warn("handler exception: " + e);
+            this.close(key, connection);
+        }
+    }
+
+    private void close(SelectionKey key, Connection connection) {
+        Log.info("close handler");
+        this.activeHandlers.decrement();
+        key.cancel();
+        try {
+            connection.channel.flush();
+        } catch (IOException ignored) {
+        }
+        connection.channel.close();
+        connection.handler.close();
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : this.selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof Connection connection)
+                this.close(key, connection);
+        }
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            Log.warn("selector IO exception: " + e);
+        }
+    }
+
+    private static class Connection {
+        private final TCPChannel channel;
+        private final TCPHandler handler;
+        private boolean isClosing;
+
+        private Connection(TCPChannel channel, TCPHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+            this.isClosing = false;
+        }
+
+        private void receive(byte[] messageBytes) {
+            if (this.isClosing)
+                return;
+            Message msg;
+            try {
+                msg = Message.from(messageBytes);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                Log.warn(() -> "ev -> warn: malformed message: " + e);
+                return;
+            }
+            this.isClosing = !this.handler.receive(msg);
+        }
+    }
+}
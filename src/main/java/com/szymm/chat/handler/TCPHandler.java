@@ -2,10 +2,21 @@ package com.szymm.chat.handler;
 
 import com.szymm.chat.net.Address;
 import com.szymm.chat.ChatServer;
+import com.szymm.chat.federation.Federation;
+import com.szymm.chat.history.HistoryStore;
 import com.szymm.chat.net.Message;
+import com.szymm.chat.net.Opcode;
 import com.szymm.chat.net.TCPEndpoint;
 import com.szymm.chat.net.UDPEndpoint;
+import com.szymm.chat.net.WireFormat;
+import com.szymm.chat.user.OutboundQueue;
+import com.szymm.chat.user.RoomIndex;
+import com.szymm.chat.user.Roster;
 import com.szymm.chat.user.User;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.metrics.Histogram;
+import com.szymm.chat.metrics.Metrics;
 
 import java.io.IOException;
 import java.util.List;
@@ -13,30 +24,78 @@ import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class TCPHandler extends Handler {
     private final TCPEndpoint endpoint;
+    private final OutboundQueue outbound;
+    private final Histogram fanoutSize;
+    private final Histogram fanoutNanos;
+    private final Counter[] messageCounters;
+    private final Counter messagesLimited;
     private Future<?> udpHandlerTask;
+    private boolean hasJoined;
+    private User user;
 
     public TCPHandler(ChatServer server, TCPEndpoint endpoint) {
         super(server);
         this.endpoint = endpoint;
+        this.outbound = server.openOutbound(endpoint);
+        this.fanoutSize = server.metrics.histogram("fanout.pm.size");
+        this.fanoutNanos = server.metrics.histogram("fanout.pm.nanos");
+        this.messageCounters = TCPHandler.createMessageCounters(server.metrics);
+        this.messagesLimited = server.metrics.counter("rate.limited.messages");
         this.udpHandlerTask = null;
+        this.hasJoined = false;
+        this.user = null;
     }
 
     @Override
     public void handle() throws HandlerException, IOException {
-        Message msg = Message.from(this.endpoint);
-        System.out.println("receive message -> " + this.getAddress());
-        System.out.println(msg);
+        Message msg;
+        try {
+            msg = Message.from(this.endpoint);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            Handler.signalWarn("malformed message: " + e);
+            return;
+        }
+        this.handle(msg);
+    }
+
+    boolean receive(Message msg) {
+        try {
+            this.handle(msg);
+            return true;
+        } catch (HandlerException e) {
+            return !Handler.shouldClose(e);
+        }
+    }
+
+    public void handle(Message msg) throws HandlerException {
+        Log.debug(() -> "receive message -> " + this.getAddress() + "\n" + msg);
+        this.messageCounters[msg.opcode.code].increment();
+        if (this.user == null && !TCPHandler.isOpenBeforeJoin(msg.opcode))
+            Handler.signalWarn("join required before " + msg.type + ": " + this.getAddress());
+        if (this.user != null && msg.opcode != Opcode.QUIT && msg.opcode != Opcode.PING
+                && !this.user.getLimiter().allowMessage(msg.getWireSize())) {
+            this.messagesLimited.increment();
+            Handler.notifyLimited(this.user, msg.type);
+            return;
+        }
 
-        switch (msg.type) {
-            case "join" -> this.handleJoin(msg);
-            case "+udp" -> this.handlePlusUDP(msg);
-            case "pm" -> this.handlePM(msg);
-            case "dm" -> this.handleDM(msg);
-            case "ls" -> this.handleLS(msg);
-            case "quit" -> this.handleQuit(msg);
+        switch (msg.opcode) {
+            case JOIN -> this.handleJoin(msg);
+            case PLUS_UDP -> this.handlePlusUDP(msg);
+            case PM -> this.handlePM(msg);
+            case DM -> this.handleDM(msg);
+            case LS -> this.handleLS(msg);
+            case QUIT -> this.handleQuit(msg);
+            case WIRE -> this.handleWire(msg);
+            case STATS -> this.handleStats(msg);
+            case HISTORY -> this.handleHistory(msg);
+            case JOIN_ROOM -> this.handleJoinRoom(msg);
+            case LEAVE_ROOM -> this.handleLeaveRoom(msg);
+            case PING -> Log.debug(() -> "ping: " + msg.origin);
         }
     }
 
@@ -45,7 +104,30 @@ public class TCPHandler extends Handler {
         return this.endpoint.getRemoteAddress();
     }
 
+    @Override
+    protected void close() {
+        if (this.user != null && this.userStore.remove(this.user)) {
+            Log.info(() -> "drop disconnected user: " + this.user.name);
+            this.user.getUDP().ifPresent(UDPEndpoint::close);
+            if (this.udpHandlerTask != null)
+                this.udpHandlerTask.cancel(true);
+        }
+        this.outbound.close();
+        this.endpoint.close();
+    }
+
+    private User joinedUser() throws HandlerException {
+        if (this.user == null || !this.userStore.contains(this.user))
+            Handler.signalWarn("not joined: " + this.getAddress());
+        return this.user;
+    }
+
     private void sendMessage(User user, Message message) throws IOException {
+        Optional<OutboundQueue> outbound = user.getOutbound();
+        if (outbound.isPresent()) {
+            outbound.get().offer(message);
+            return;
+        }
         Optional<TCPEndpoint> tcpEndpoint = user.getTCP();
         if (tcpEndpoint.isPresent())
             message.sendTo(tcpEndpoint.get());
@@ -53,32 +135,46 @@ public class TCPHandler extends Handler {
 
     private void handleJoin(Message message) throws HandlerException {
         String name = message.origin;
-        System.out.println("request join: " + name);
+        Log.info(() -> "request join: " + name);
+        if (this.user != null)
+            Handler.signalWarn("already joined as " + this.user.name + ": " + name);
         try {
+            if (this.server.isStopping())
+                throw new IllegalArgumentException("server is shutting down");
+            if (this.server.getFederation().map(federation -> federation.isRemote(name)).orElse(false))
+                throw new IllegalArgumentException("name already registered on a peer node");
             User user = new User(name, this.endpoint, null);
+            user.bindOutbound(this.outbound);
+            user.bindLimiter(this.server.openLimiter());
             this.userStore.add(user);
+            this.hasJoined = true;
+            this.user = user;
+            this.server.getIdleReaper().ifPresent(reaper -> reaper.watch(user));
         } catch (IllegalArgumentException | NoSuchElementException e) {
             Handler.signalWarn(e);
         }
     }
 
     private void handlePlusUDP(Message message) throws HandlerException {
-        String name = message.origin;
+        User user = this.joinedUser();
+        String name = user.name;
         try {
             Address tcpAddress = this.endpoint.getRemoteAddress();
             int udpPort = Integer.parseInt(message.text);
             Address udpAddress = tcpAddress.withPort(udpPort);
-            UDPEndpoint udpEndpoint = new UDPEndpoint(this.server.udpMultiplexer, udpAddress);
-            System.out.println("request udp channel: " + name + " :" + udpPort);
+            Log.info(() -> "request udp channel: " + name + " :" + udpPort);
 
-            User user = this.userStore.find(name);
             if (user.getUDP().isPresent())
                 Handler.signalWarn("udp channel already up: " + name);
+            UDPEndpoint udpEndpoint = new UDPEndpoint(this.server.udpMultiplexer, udpAddress);
+            udpEndpoint.attach(user);
             user.bindUDP(udpEndpoint);
-            System.out.println("bound udp channel: " + name);
+            Log.info(() -> "bound udp channel: " + name);
 
-            UDPHandler udpHandler = new UDPHandler(this.server, udpEndpoint);
-            this.udpHandlerTask = this.server.handle(udpHandler);
+            if (!this.server.udpMultiplexer.isInline()) {
+                UDPHandler udpHandler = new UDPHandler(this.server, udpEndpoint, user.getId());
+                this.udpHandlerTask = this.server.handle(udpHandler);
+            }
         } catch (NoSuchElementException | NumberFormatException e) {
             Handler.signalWarn(e);
         } catch (IOException e) {
@@ -87,11 +183,25 @@ public class TCPHandler extends Handler {
     }
 
     private void handlePM(Message message) throws HandlerException {
-        String name = message.origin;
-        System.out.println("pm: " + name + ": " + message.text);
+        User origin = this.joinedUser();
+        Log.debug(() -> "pm: " + origin.name + ": " + message.text);
         try {
-            for (User user : this.userStore.broadcast(name))
-                this.sendMessage(user, message);
+            int originId = origin.getId();
+            Message relayed = message.withSender(originId, origin.name);
+            long start = System.nanoTime();
+            int recipients = 0;
+            Roster roster = this.userStore.audience(origin);
+            for (int i = 0; i < roster.size(); i++) {
+                if (roster.idAt(i) != originId) {
+                    this.sendMessage(roster.get(i), relayed);
+                    recipients++;
+                }
+            }
+            this.fanoutSize.record(recipients);
+            this.fanoutNanos.record(System.nanoTime() - start);
+            this.server.getFederation().ifPresent(federation -> federation.forwardPM(RoomIndex.keyOf(origin), relayed));
+            if (origin.getRoom().isEmpty())
+                this.server.getHistory().ifPresent(history -> history.append(relayed));
         } catch (IOException e) {
             Handler.signalFatal(e.getMessage());
         } catch (NoSuchElementException e) {
@@ -100,14 +210,24 @@ public class TCPHandler extends Handler {
     }
 
     private void handleDM(Message message) throws HandlerException {
-        String name = message.origin;
-        String[] values = message.text.split(":", 2);
-        String target = values[0];
-        String text = values[1];
-        System.out.println("dm: " + name + "->" + target + ": " + text);
+        User origin = this.joinedUser();
+        String name = origin.name;
+        String target = message.target;
+        String text = message.text;
+        if (target.isEmpty()) {
+            String[] values = message.text.split(":", 2);
+            if (values.length < 2)
+                Handler.signalWarn("dm without target: " + name);
+            target = values[0];
+            text = values[1];
+        }
         try {
-            User user = this.userStore.find(target);
-            this.sendMessage(user, message);
+            Message relayed = new Message(origin.getId(), name, message.type, target, text);
+            Log.debug(() -> "dm: " + name + "->" + relayed.target + ": " + relayed.text);
+            Optional<Federation> federation = this.server.getFederation();
+            if (federation.isEmpty() || !federation.get().forwardDM(relayed))
+                this.sendMessage(this.userStore.find(target), relayed);
+            this.server.getHistory().ifPresent(history -> history.append(relayed));
         } catch (IOException e) {
             Handler.signalFatal(e);
         } catch (NoSuchElementException e) {
@@ -116,14 +236,15 @@ public class TCPHandler extends Handler {
     }
 
     private void handleLS(Message message) throws HandlerException {
-        String name = message.origin;
-        System.out.println("ls: " + name);
+        User user = this.joinedUser();
+        Log.debug(() -> "ls: " + user.name);
         try {
             List<User> users = this.userStore.findAll();
-            String clientsText = users.stream()
-                    .map(user -> user.name)
+            Stream<String> remoteNames = this.server.getFederation()
+                    .map(federation -> federation.remoteNames().stream())
+                    .orElseGet(Stream::empty);
+            String clientsText = Stream.concat(users.stream().map(listed -> listed.name), remoteNames)
                     .collect(Collectors.joining(" "));
-            User user = this.userStore.find(name);
             Message response = new Message("@sv", "ls", clientsText);
             this.sendMessage(user, response);
         } catch (IOException e) {
@@ -133,12 +254,112 @@ public class TCPHandler extends Handler {
         }
     }
 
-    private void handleQuit(Message message) throws HandlerException {
+    private void handleJoinRoom(Message message) throws HandlerException {
+        User user = this.joinedUser();
+        String room = message.text;
+        Log.info(() -> "join room: " + user.name + " " + room);
+        try {
+            this.userStore.joinRoom(user, room);
+            this.sendMessage(user, new Message("@sv", "join-room", room));
+        } catch (IOException e) {
+            Handler.signalFatal(e);
+        } catch (IllegalArgumentException | NoSuchElementException e) {
+            Handler.signalWarn(e);
+        }
+    }
+
+    private void handleLeaveRoom(Message message) throws HandlerException {
+        User user = this.joinedUser();
+        Log.info(() -> "leave room: " + user.name);
+        try {
+            this.userStore.leaveRoom(user);
+            this.sendMessage(user, new Message("@sv", "leave-room", ""));
+        } catch (IOException e) {
+            Handler.signalFatal(e);
+        } catch (NoSuchElementException e) {
+            Handler.signalWarn(e);
+        }
+    }
+
+    private void handleStats(Message message) throws HandlerException {
+        User user = this.joinedUser();
+        Log.debug(() -> "stats: " + user.name);
+        try {
+            Message response = new Message("@sv", "stats", this.server.metrics.format());
+            this.sendMessage(user, response);
+        } catch (IOException e) {
+            Handler.signalFatal(e);
+        } catch (NoSuchElementException e) {
+            Handler.signalWarn(e);
+        }
+    }
+
+    private void handleHistory(Message message) throws HandlerException {
+        User user = this.joinedUser();
+        Log.debug(() -> "history: " + user.name + " " + message.text);
+        try {
+            Optional<HistoryStore> history = this.server.getHistory();
+            if (history.isEmpty()) {
+                this.sendMessage(user, new Message("@sv", "history", "disabled"));
+                return;
+            }
+            String[] values = message.text.isBlank() ? new String[0] : message.text.trim().split(" ", 2);
+            int limit = values.length > 0 ? Integer.parseInt(values[0]) : TCPHandler.defaultHistory;
+            limit = Math.max(0, Math.min(limit, TCPHandler.maxHistory));
+            List<Message> entries = values.length > 1
+                    ? history.get().publicSince(Long.parseLong(values[1]), limit)
+                    : history.get().lastPublic(limit);
+            for (Message entry : entries)
+                this.sendMessage(user, entry);
+            this.sendMessage(user, new Message("@sv", "history", Integer.toString(entries.size())));
+        } catch (IOException e) {
+            Handler.signalFatal(e);
+        } catch (NoSuchElementException | NumberFormatException e) {
+            Handler.signalWarn(e);
+        }
+    }
+
+    private void handleWire(Message message) throws HandlerException {
         String name = message.origin;
-        System.out.println("request quit: " + name);
-        this.userStore.remove(name);
-        if (this.udpHandlerTask != null)
-            this.udpHandlerTask.cancel(true);
+        Log.info(() -> "request wire format: " + name + " " + message.text);
+        WireFormat format = switch (message.text) {
+            case "0" -> WireFormat.TEXT;
+            case "1" -> WireFormat.BINARY;
+            default -> null;
+        };
+        if (format == null)
+            Handler.signalWarn("unsupported wire format: " + message.text);
+        if (this.hasJoined)
+            Handler.signalWarn("wire format must be set before join: " + name);
+        if (!this.outbound.offer(new Message("@sv", "wire", message.text)))
+            Handler.signalFatal("wire response dropped: " + name);
+        this.endpoint.setFormat(format);
+    }
+
+    private void handleQuit(Message message) throws HandlerException {
+        Log.info(() -> "request quit: " + (this.user != null ? this.user.name : this.getAddress()));
+        if (this.user != null && this.userStore.remove(this.user)) {
+            this.user.getUDP().ifPresent(UDPEndpoint::close);
+            if (this.udpHandlerTask != null)
+                this.udpHandlerTask.cancel(true);
+        }
         Handler.signalStop();
     }
-}
\ No newline at end of file
+
+    private static boolean isOpenBeforeJoin(Opcode opcode) {
+        return opcode == Opcode.JOIN || opcode == Opcode.WIRE || opcode == Opcode.PING || opcode == Opcode.QUIT;
+    }
+
+    private static final int defaultHistory = 20;
+    private static final int maxHistory = 1000;
+
+    private static Counter[] createMessageCounters(Metrics metrics) {
+        Opcode[] opcodes = Opcode.values();
+        Counter[] counters = new Counter[opcodes.length];
+        for (Opcode opcode : opcodes) {
+            String type = opcode.type == null ? "other" : opcode.type;
+            counters[opcode.code] = metrics.counter("messages." + type);
+        }
+        return counters;
+    }
+}
@@ -4,24 +4,33 @@ import com.szymm.chat.net.Address;
 import com.szymm.chat.ChatServer;
 import com.szymm.chat.net.Frame;
 import com.szymm.chat.net.UDPEndpoint;
+import com.szymm.chat.user.RoomIndex;
+import com.szymm.chat.user.Roster;
 import com.szymm.chat.user.User;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Histogram;
 
 import java.io.IOException;
 import java.util.Optional;
 
 public class UDPHandler extends Handler {
     private final UDPEndpoint endpoint;
+    private final int ownerId;
+    private final Histogram fanoutSize;
+    private final Histogram fanoutNanos;
 
-    public UDPHandler(ChatServer server, UDPEndpoint endpoint) {
+    public UDPHandler(ChatServer server, UDPEndpoint endpoint, int ownerId) {
         super(server);
         this.endpoint = endpoint;
+        this.ownerId = ownerId;
+        this.fanoutSize = server.metrics.histogram("fanout.frame.size");
+        this.fanoutNanos = server.metrics.histogram("fanout.frame.nanos");
     }
 
     @Override
     public void handle() throws HandlerException, IOException {
         Frame frm = Frame.from(this.endpoint);
-        System.out.println("receive frame");
-        System.out.println(frm);
+        Log.debug(() -> "receive frame\n" + frm);
         this.handleAny(frm);
     }
 
@@ -30,22 +39,30 @@ public class UDPHandler extends Handler {
         return this.endpoint.getRemoteAddress();
     }
 
-    private void sendFrame(User user, Frame frame) throws IOException {
+    private boolean sendFrame(User user, Frame frame) throws IOException {
         Optional<UDPEndpoint> udpEndpoint = user.getUDP();
-        if (udpEndpoint.isPresent())
-            frame.sendTo(udpEndpoint.get());
+        if (udpEndpoint.isEmpty())
+            return false;
+        frame.sendTo(udpEndpoint.get());
+        return true;
     }
 
     private void handleAny(Frame frame) throws HandlerException {
         try {
-            for (User user : this.userStore.filter(this::isTarget))
-                this.sendFrame(user, frame);
+            User owner = this.userStore.roster().byId(this.ownerId);
+            long start = System.nanoTime();
+            int recipients = 0;
+            Roster roster = owner != null ? this.userStore.audience(owner) : this.userStore.rooms().lobby();
+            for (int i = 0; i < roster.size(); i++) {
+                if (roster.idAt(i) != this.ownerId && this.sendFrame(roster.get(i), frame))
+                    recipients++;
+            }
+            this.fanoutSize.record(recipients);
+            this.fanoutNanos.record(System.nanoTime() - start);
+            String room = owner != null ? RoomIndex.keyOf(owner) : "";
+            this.server.getFederation().ifPresent(federation -> federation.forwardFrame(room, frame));
         } catch (IOException e) {
             Handler.signalFatal(e);
         }
     }
-
-    private boolean isTarget(User user) {
-        return !user.ownsUDP(this.endpoint);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package com.szymm.chat.handler;
+
+import com.szymm.chat.ChatServer;
+import com.szymm.chat.net.Frame;
+import com.szymm.chat.net.UDPEndpoint;
+import com.szymm.chat.net.UDPMultiplexer;
+import com.szymm.chat.user.RateLimiter;
+import com.szymm.chat.user.User;
+import com.szymm.chat.metrics.Counter;
+
+public class UDPLimiter implements UDPMultiplexer.Admission {
+    private final Counter framesLimited;
+
+    public UDPLimiter(ChatServer server) {
+        this.framesLimited = server.metrics.counter("rate.limited.frames");
+    }
+
+    @Override
+    public boolean admit(UDPEndpoint endpoint, byte[] datagram, int length) {
+        if (!(endpoint.attachment() instanceof User owner))
+            return true;
+        RateLimiter limiter = owner.getLimiter();
+        boolean isAllowed = Frame.startsFrame(datagram, length)
+                ? limiter.allowFrame(length)
+                : limiter.allowBytes(length);
+        if (!isAllowed) {
+            this.framesLimited.increment();
+            Handler.notifyLimited(owner, "frame");
+        }
+        return isAllowed;
+    }
+}
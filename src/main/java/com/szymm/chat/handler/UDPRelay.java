@@ -0,0 +1,72 @@
+package com.szymm.chat.handler;
+
+import com.szymm.chat.ChatServer;
+import com.szymm.chat.net.Frame;
+import com.szymm.chat.net.UDPEndpoint;
+import com.szymm.chat.net.UDPMultiplexer;
+import com.szymm.chat.user.RoomIndex;
+import com.szymm.chat.user.Roster;
+import com.szymm.chat.user.User;
+import com.szymm.chat.user.UserStore;
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.metrics.Histogram;
+
+import java.io.IOException;
+import java.util.Optional;
+
+public class UDPRelay implements UDPMultiplexer.Dispatcher {
+    private final ChatServer server;
+    private final UserStore userStore;
+    private final Counter datagramsDropped;
+    private final Histogram fanoutSize;
+    private final Histogram fanoutNanos;
+
+    public UDPRelay(ChatServer server) {
+        this.server = server;
+        this.userStore = server.userStore;
+        this.datagramsDropped = server.metrics.counter("udp.datagrams.dropped");
+        this.fanoutSize = server.metrics.histogram("fanout.frame.size");
+        this.fanoutNanos = server.metrics.histogram("fanout.frame.nanos");
+    }
+
+    @Override
+    public void dispatch(UDPEndpoint endpoint, byte[] datagram, int length) throws IOException {
+        this.dispatch(endpoint, datagram, length, false);
+    }
+
+    @Override
+    public void dispatch(UDPEndpoint endpoint, byte[] datagram, int length, boolean reliable) throws IOException {
+        int frameLength;
+        if (Frame.isFragment(datagram, length)) {
+            frameLength = length;
+        } else {
+            int size = Frame.sizeOf(datagram, length);
+            if (size < 0) {
+                this.datagramsDropped.increment();
+                Log.warn(() -> "drop malformed frame -> " + endpoint.getRemoteAddress());
+                return;
+            }
+            frameLength = size + 4;
+        }
+        User owner = endpoint.attachment() instanceof User user ? user : null;
+        long start = System.nanoTime();
+        int recipients = 0;
+        Roster roster = owner != null ? this.userStore.audience(owner) : this.userStore.rooms().lobby();
+        for (int i = 0; i < roster.size(); i++) {
+            User user = roster.get(i);
+            Optional<UDPEndpoint> udpEndpoint = user.getUDP();
+            if (udpEndpoint.isPresent() && udpEndpoint.get() != endpoint) {
+                if (reliable)
+                    udpEndpoint.get().sendReliable(datagram, frameLength);
+                else
+                    udpEndpoint.get().send(datagram, frameLength);
+                recipients++;
+            }
+        }
+        this.fanoutSize.record(recipients);
+        this.fanoutNanos.record(System.nanoTime() - start);
+        String room = owner != null ? RoomIndex.keyOf(owner) : "";
+        this.server.getFederation().ifPresent(federation -> federation.forwardFrame(room, datagram, frameLength, reliable));
+    }
+}
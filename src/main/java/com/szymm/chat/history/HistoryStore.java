@@ -0,0 +1,290 @@
+package com.szymm.chat.history;
+
+import com.szymm.chat.log.Log;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.Opcode;
+import com.szymm.chat.net.WireFormat;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+
+public class HistoryStore implements AutoCloseable {
+    private final Path directory;
+    private final int segmentSize;
+    private final BlockingQueue<Pending> pending;
+    private final List<Pending> batch;
+    private final Thread writer;
+    private volatile MappedByteBuffer[] segments;
+    private volatile long[] positions;
+    private volatile long[] timestamps;
+    private volatile int count;
+    private volatile int[] publicSequences;
+    private volatile int publicCount;
+    private volatile boolean isClosed;
+    private int writeOffset;
+
+    private HistoryStore(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.pending = new LinkedBlockingQueue<>();
+        this.batch = new ArrayList<>(HistoryStore.maxBatch);
+        this.writer = new Thread(this::writeLoop, "history-writer");
+        this.writer.setDaemon(true);
+        this.segments = new MappedByteBuffer[0];
+        this.positions = new long[1024];
+        this.timestamps = new long[1024];
+        this.count = 0;
+        this.publicSequences = new int[1024];
+        this.publicCount = 0;
+        this.isClosed = false;
+        this.writeOffset = 0;
+    }
+
+    public static HistoryStore open(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        HistoryStore store = new HistoryStore(directory, segmentSize);
+        store.rebuild();
+        store.writer.start();
+        return store;
+    }
+
+    public static HistoryStore open(Path directory) throws IOException {
+        return HistoryStore.open(directory, HistoryStore.defaultSegmentSize);
+    }
+
+    public void append(Message message) {
+        if (!this.isClosed)
+            this.pending.add(new Pending(message, System.currentTimeMillis()));
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public long timestampAt(long sequence) {
+        this.checkSequence(sequence);
+        return this.timestamps[(int) sequence];
+    }
+
+    public Message get(long sequence) {
+        this.checkSequence(sequence);
+        return this.read(this.positions[(int) sequence]);
+    }
+
+    public long firstSince(long timestampMillis) {
+        int count = this.count;
+        long[] timestamps = this.timestamps;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestampMillis)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    public int publicSize() {
+        return this.publicCount;
+    }
+
+    public List<Message> lastPublic(int limit) {
+        int publicCount = this.publicCount;
+        return this.readPublic(Math.max(0, publicCount - limit), publicCount);
+    }
+
+    public List<Message> publicSince(long timestampMillis, int limit) {
+        int publicCount = this.publicCount;
+        int[] sequences = this.publicSequences;
+        long first = this.firstSince(timestampMillis);
+        int low = 0;
+        int high = publicCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sequences[mid] < first)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return this.readPublic(low, (int) Math.min(publicCount, (long) low + limit));
+    }
+
+    @Override
+    public void close() {
+        this.isClosed = true;
+        this.writer.interrupt();
+        try {
+            this.writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkSequence(long sequence) {
+        if (sequence < 0 || sequence >= this.count)
+            throw new IndexOutOfBoundsException("no history entry " + sequence);
+    }
+
+    private List<Message> readPublic(int from, int to) {
+        int[] sequences = this.publicSequences;
+        long[] positions = this.positions;
+        List<Message> messages = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+            messages.add(this.read(positions[sequences[i]]));
+        return messages;
+    }
+
+    private Message read(long position) {
+        MappedByteBuffer segment = this.segments[(int) (position >>> 32)];
+        int offset = (int) position;
+        int size = segment.getInt(offset + 16);
+        byte[] messageBytes = new byte[size];
+        segment.get(offset + HistoryStore.headerSize, messageBytes);
+        return Message.from(messageBytes);
+    }
+
+    private void writeLoop() {
+        while (!this.isClosed || !this.pending.isEmpty()) {
+            try {
+                if (this.isClosed) {
+                    this.pending.drainTo(this.batch, HistoryStore.maxBatch);
+                } else {
+                    this.batch.add(this.pending.take());
+                    this.pending.drainTo(this.batch, HistoryStore.maxBatch - 1);
+                }
+                this.commit();
+            } catch (InterruptedException e) {
+                this.isClosed = true;
+            } catch (IOException e) {
+                Log.error("history IO exception: " + e);
+            } finally {
+                this.batch.clear();
+            }
+        }
+    }
+
+    private void commit() throws IOException {
+        MappedByteBuffer touched = null;
+        for (Pending entry : this.batch) {
+            byte[] wireBytes = entry.message.encode(WireFormat.BINARY);
+            int recordSize = 16 + wireBytes.length;
+            if (this.segments.length == 0 || this.writeOffset + recordSize + 4 > this.currentSegment().capacity()) {
+                if (touched != null)
+                    touched.force();
+                this.roll(recordSize + 4);
+            }
+            MappedByteBuffer segment = this.currentSegment();
+            int offset = this.writeOffset;
+            long sequence = this.count;
+            segment.putLong(offset, sequence);
+            segment.putLong(offset + 8, entry.timestampMillis);
+            segment.put(offset + 16, wireBytes);
+            this.writeOffset += recordSize;
+            this.index(this.segments.length - 1, offset, entry.timestampMillis, entry.message.opcode);
+            touched = segment;
+        }
+        if (touched != null)
+            touched.force();
+    }
+
+    private void index(int segmentIndex, int offset, long timestampMillis, Opcode opcode) {
+        int sequence = this.count;
+        if (sequence == this.positions.length) {
+            this.positions = Arrays.copyOf(this.positions, sequence * 2);
+            this.timestamps = Arrays.copyOf(this.timestamps, sequence * 2);
+        }
+        this.positions[sequence] = (long) segmentIndex << 32 | offset;
+        this.timestamps[sequence] = timestampMillis;
+        if (opcode == Opcode.PM) {
+            int publicCount = this.publicCount;
+            if (publicCount == this.publicSequences.length)
+                this.publicSequences = Arrays.copyOf(this.publicSequences, publicCount * 2);
+            this.publicSequences[publicCount] = sequence;
+            this.publicCount = publicCount + 1;
+        }
+        this.count = sequence + 1;
+    }
+
+    private MappedByteBuffer currentSegment() {
+        return this.segments[this.segments.length - 1];
+    }
+
+    private void roll(int minimumSize) throws IOException {
+        int segmentIndex = this.segments.length;
+        Path path = this.directory.resolve(HistoryStore.segmentName(segmentIndex));
+        MappedByteBuffer segment = HistoryStore.map(path, Math.max(this.segmentSize, minimumSize));
+        MappedByteBuffer[] segments = Arrays.copyOf(this.segments, segmentIndex + 1);
+        segments[segmentIndex] = segment;
+        this.segments = segments;
+        this.writeOffset = 0;
+    }
+
+    private void rebuild() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            paths = files.filter(path -> path.getFileName().toString().matches("history-\\d{8}\\.log"))
+                    .sorted()
+                    .toList();
+        }
+        for (Path path : paths) {
+            MappedByteBuffer segment = HistoryStore.map(path, (int) Files.size(path));
+            MappedByteBuffer[] segments = Arrays.copyOf(this.segments, this.segments.length + 1);
+            segments[segments.length - 1] = segment;
+            this.segments = segments;
+            int offset = 0;
+            while (offset + HistoryStore.headerSize <= segment.capacity()) {
+                int size = segment.getInt(offset + 16);
+                if (size <= 0 || offset + HistoryStore.headerSize + size > segment.capacity())
+                    break;
+                if (segment.getLong(offset) != this.count)
+                    throw new IOException("history out of sequence in " + path);
+                Opcode opcode = Opcode.of(segment.get(offset + HistoryStore.headerSize + 1));
+                this.index(segments.length - 1, offset, segment.getLong(offset + 8), opcode);
+                offset += HistoryStore.headerSize + size;
+            }
+            this.writeOffset = offset;
+        }
+        if (this.count > 0)
+            Log.info("history rebuilt: " + this.count + " messages in " + paths.size() + " segments");
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(HistoryStore.byteOrder);
+            return buffer;
+        }
+    }
+
+    private static String segmentName(int segmentIndex) {
+        return "history-%08d.log".formatted(segmentIndex);
+    }
+
+    private static class Pending {
+        private final Message message;
+        private final long timestampMillis;
+
+        private Pending(Message message, long timestampMillis) {
+            this.message = message;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+
+    private static final int headerSize = 20;
+    private static final int maxBatch = 256;
+    private static final int defaultSegmentSize = 16 << 20;
+    private static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+}
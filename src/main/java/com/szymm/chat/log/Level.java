@@ -0,0 +1,17 @@
+package com.szymm.chat.log;
+
+public enum Level {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF;
+
+    public static Level of(String name) {
+        for (Level level : Level.values()) {
+            if (level.name().equalsIgnoreCase(name))
+                return level;
+        }
+        throw new IllegalArgumentException("unknown log level: " + name);
+    }
+}
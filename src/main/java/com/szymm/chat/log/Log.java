@@ -0,0 +1,103 @@
+package com.szymm.chat.log;
+
+import java.io.BufferedOutputStream;
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+public final class Log {
+    private static volatile Level level = Log.initialLevel();
+    private static final LogRing ring = new LogRing(Log.ringCapacity);
+    private static final PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+
+    static {
+        Thread writer = new Thread(Log::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static void setLevel(Level level) {
+        Log.level = level;
+    }
+
+    public static Level getLevel() {
+        return Log.level;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(Log.level) >= 0;
+    }
+
+    public static boolean isDebug() {
+        return Log.isEnabled(Level.DEBUG);
+    }
+
+    public static long getDroppedCount() {
+        return Log.ring.getDroppedCount();
+    }
+
+    public static void debug(Supplier<String> message) {
+        Log.log(Level.DEBUG, message);
+    }
+
+    public static void info(String message) {
+        Log.log(Level.INFO, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        Log.log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        Log.log(Level.WARN, message);
+    }
+
+    public static void warn(Supplier<String> message) {
+        Log.log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        Log.log(Level.ERROR, message);
+    }
+
+    public static void log(Level level, Object message) {
+        if (Log.isEnabled(level))
+            Log.ring.offer(level, message);
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            if (!Log.drain())
+                Log.ring.await();
+        }
+    }
+
+    private static synchronized boolean drain() {
+        boolean hasWritten = false;
+        while (Log.ring.poll(Log::write))
+            hasWritten = true;
+        if (hasWritten)
+            Log.out.flush();
+        return hasWritten;
+    }
+
+    private static void write(Level level, Object entry) {
+        String text;
+        try {
+            text = entry instanceof Supplier<?> supplier ? String.valueOf(supplier.get()) : String.valueOf(entry);
+        } catch (RuntimeException e) {
+            text = "log supplier exception: " + e;
+        }
+        Log.out.println(text);
+    }
+
+    private static Level initialLevel() {
+        String name = System.getProperty("chat.log");
+        return name == null ? Level.INFO : Level.of(name);
+    }
+
+    private static final int ringCapacity = 8192;
+}
@@ -0,0 +1,81 @@
+package com.szymm.chat.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+class LogRing {
+    private final Object[] entries;
+    private final Level[] levels;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private final AtomicLong dropped;
+    private final int mask;
+    private volatile long consumed;
+    private volatile Thread waiter;
+
+    LogRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("ring capacity must be a power of two");
+        this.entries = new Object[capacity];
+        this.levels = new Level[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.claimed = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.mask = capacity - 1;
+        this.consumed = 0;
+        this.waiter = null;
+    }
+
+    boolean offer(Level level, Object entry) {
+        long sequence;
+        do {
+            sequence = this.claimed.get();
+            if (sequence - this.consumed >= this.entries.length) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+        } while (!this.claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) (sequence & this.mask);
+        this.entries[slot] = entry;
+        this.levels[slot] = level;
+        this.published.set(slot, sequence + 1);
+        Thread waiter = this.waiter;
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+        return true;
+    }
+
+    boolean poll(Sink sink) {
+        long sequence = this.consumed;
+        int slot = (int) (sequence & this.mask);
+        if (this.published.get(slot) != sequence + 1)
+            return false;
+        Object entry = this.entries[slot];
+        Level level = this.levels[slot];
+        this.entries[slot] = null;
+        this.consumed = sequence + 1;
+        sink.accept(level, entry);
+        return true;
+    }
+
+    void await() {
+        this.waiter = Thread.currentThread();
+        if (this.isEmpty())
+            LockSupport.park(this);
+        this.waiter = null;
+    }
+
+    private boolean isEmpty() {
+        long sequence = this.consumed;
+        return this.published.get((int) (sequence & this.mask)) != sequence + 1;
+    }
+
+    long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    interface Sink {
+        void accept(Level level, Object entry);
+    }
+}
@@ -0,0 +1,27 @@
+package com.szymm.chat.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter {
+    private final LongAdder value;
+
+    public Counter() {
+        this.value = new LongAdder();
+    }
+
+    public void increment() {
+        this.value.increment();
+    }
+
+    public void decrement() {
+        this.value.decrement();
+    }
+
+    public void add(long amount) {
+        this.value.add(amount);
+    }
+
+    public long get() {
+        return this.value.sum();
+    }
+}
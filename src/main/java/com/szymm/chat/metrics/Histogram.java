@@ -0,0 +1,83 @@
+package com.szymm.chat.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram {
+    private final LongAdder[] buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    public Histogram() {
+        this.buckets = new LongAdder[Histogram.bucketCount];
+        for (int i = 0; i < this.buckets.length; i++)
+            this.buckets[i] = new LongAdder();
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        this.buckets[Histogram.bucketOf(value)].increment();
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    public long percentile(double quantile) {
+        long[] counts = new long[this.buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(Histogram.upperBound(i), this.getMax());
+        }
+        return this.getMax();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < Histogram.subBuckets)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - Histogram.subBits;
+        int sub = (int) (value >>> shift) & (Histogram.subBuckets - 1);
+        return (shift + 1) * Histogram.subBuckets + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < Histogram.subBuckets)
+            return bucket;
+        int shift = bucket / Histogram.subBuckets - 1;
+        long sub = bucket % Histogram.subBuckets;
+        long lowerBound = (Histogram.subBuckets + sub) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    private static final int subBits = 4;
+    private static final int subBuckets = 1 << Histogram.subBits;
+    private static final int bucketCount = (64 - Histogram.subBits) * Histogram.subBuckets;
+}
@@ -0,0 +1,61 @@
+package com.szymm.chat.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+public class Metrics {
+    private final Map<String, Counter> counters;
+    private final Map<String, Histogram> histograms;
+    private final Map<String, LongSupplier> gauges;
+
+    public Metrics() {
+        this.counters = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+    }
+
+    public Counter counter(String name) {
+        Counter counter = this.counters.get(name);
+        if (counter != null)
+            return counter;
+        return this.counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = this.histograms.get(name);
+        if (histogram != null)
+            return histogram;
+        return this.histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public void gauge(String name, LongSupplier supplier) {
+        this.gauges.put(name, supplier);
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        this.counters.forEach((name, counter) -> values.put(name, counter.get()));
+        this.gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        this.histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".p50", histogram.percentile(0.50));
+            values.put(name + ".p99", histogram.percentile(0.99));
+            values.put(name + ".max", histogram.getMax());
+        });
+        return values;
+    }
+
+    public String format() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : this.snapshot().entrySet()) {
+            if (!builder.isEmpty())
+                builder.append(' ');
+            builder.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    public static final Metrics DEFAULT = new Metrics();
+}
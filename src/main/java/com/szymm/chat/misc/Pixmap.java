@@ -5,12 +5,12 @@ import java.util.Arrays;
 import java.util.Optional;
 
 public class Pixmap {
-    private final byte x;
-    private final byte y;
+    private final int x;
+    private final int y;
     private final byte[] pixels;
     private final LUT lut;
 
-    public Pixmap(byte x, byte y, byte[] pixels, LUT lut) {
+    public Pixmap(int x, int y, byte[] pixels, LUT lut) {
         this.x = x;
         this.y = y;
         this.pixels = pixels;
@@ -22,12 +22,12 @@ public class Pixmap {
                 .split("\n");
         LUT lut = Pixmap.findLUT(lines[0])
                 .orElseThrow(() -> new IllegalArgumentException("no such LUT"));
-        byte x = (byte) (lines[1].length() / 2);
-        byte y = (byte) (lines.length - 1);
+        int x = lines[1].length() / 2;
+        int y = lines.length - 1;
         byte[] pixels = new byte[x * y];
-        short i = 0;
-        for (byte yi = 0; yi < y; yi++) {
-            for (byte xi = 0; xi < x; xi++) {
+        int i = 0;
+        for (int yi = 0; yi < y; yi++) {
+            for (int xi = 0; xi < x; xi++) {
                 int start = xi * 2;
                 int end = (xi + 1) * 2;
                 String pixelText = lines[yi + 1].substring(start, end);
@@ -38,29 +38,188 @@ public class Pixmap {
     }
 
     public static Pixmap decode(byte[] pixmapBytes, LUT lut) {
-        byte x = pixmapBytes[0];
-        byte y = pixmapBytes[1];
+        if ((pixmapBytes[0] & Pixmap.FORMAT_MARK) == 0)
+            return Pixmap.decodeRaw(pixmapBytes, lut);
+        int format = pixmapBytes[0] & 0xff;
+        int offset = switch (format & Pixmap.KIND_MASK) {
+            case Pixmap.KIND_PLAIN -> 1;
+            case Pixmap.KIND_KEYFRAME -> 1 + Pixmap.STREAM_HEADER;
+            default -> throw new IllegalArgumentException("pixmap delta or tile needs a PixmapReceiver");
+        };
+        int x = pixmapBytes[offset];
+        int y = pixmapBytes[offset + 1];
+        if (x < 0 || y < 0)
+            throw new IllegalArgumentException("bad pixmap size: " + x + "x" + y);
+        byte[] pixels = new byte[x * y];
+        Pixmap.decodePixels(pixmapBytes, offset + 2, format, pixels, pixels.length);
+        return new Pixmap(x, y, pixels, lut);
+    }
+
+    static int bitsOf(int format) {
+        int bits = format & Pixmap.BITS_MASK;
+        if (bits != 1 && bits != 2 && bits != 4 && bits != 8)
+            throw new IllegalArgumentException("bad pixmap format: " + format);
+        return bits;
+    }
+
+    private static Pixmap decodeRaw(byte[] pixmapBytes, LUT lut) {
+        int x = pixmapBytes[0];
+        int y = pixmapBytes[1];
         int size = x * y;
         byte[] pixels = Arrays.copyOfRange(pixmapBytes, 2, 2 + size);
         return new Pixmap(x, y, pixels, lut);
     }
 
     public byte[] encode() {
-        int size = this.x * this.y;
-        byte[] pixmapBytes = new byte[size + 2];
-        pixmapBytes[0] = this.x;
-        pixmapBytes[1] = this.y;
-        for (int i = 0; i < size; i++) {
-            pixmapBytes[i + 2] = this.pixels[i];
-        }
+        if (this.isLarge())
+            throw new IllegalArgumentException("pixmap too large for one frame, send it with PixmapTiler");
+        int bits = Pixmap.bitsFor(this.lut.size());
+        byte[] pixmapBytes = Pixmap.encodePixels(this.pixels, this.pixels.length, bits, Pixmap.headerSize);
+        pixmapBytes[1] = (byte) this.x;
+        pixmapBytes[2] = (byte) this.y;
         return pixmapBytes;
     }
 
+    static byte[] encodePixels(byte[] pixels, int count, int bits, int headerSize) {
+        int packedSize = Pixmap.packedSize(count, bits);
+        int runsSize = Pixmap.runsSize(pixels, count, bits);
+        boolean usesRuns = runsSize < packedSize;
+        byte[] bytes = new byte[headerSize + (usesRuns ? runsSize : packedSize)];
+        bytes[0] = (byte) (Pixmap.FORMAT_MARK | (usesRuns ? Pixmap.FORMAT_RLE : 0) | bits);
+        if (usesRuns)
+            Pixmap.packRuns(pixels, count, bits, bytes, headerSize);
+        else
+            Pixmap.packBits(pixels, 0, count, bits, bytes, headerSize);
+        return bytes;
+    }
+
+    static void decodePixels(byte[] bytes, int offset, int format, byte[] pixels, int count) {
+        int bits = Pixmap.bitsOf(format);
+        if ((format & Pixmap.FORMAT_RLE) != 0)
+            Pixmap.unpackRuns(bytes, offset, pixels, count, bits);
+        else
+            Pixmap.unpackBits(bytes, offset, pixels, 0, count, bits);
+    }
+
+    public int getX() {
+        return this.x;
+    }
+
+    public int getY() {
+        return this.y;
+    }
+
+    public boolean isLarge() {
+        return this.x > Pixmap.maxSide || this.y > Pixmap.maxSide;
+    }
+
+    public byte pixelAt(int x, int y) {
+        return this.pixels[y * this.x + x];
+    }
+
+    public LUT getLUT() {
+        return this.lut;
+    }
+
+    byte[] pixels() {
+        return this.pixels;
+    }
+
+    static int bitsFor(int colors) {
+        if (colors <= 2)
+            return 1;
+        if (colors <= 4)
+            return 2;
+        if (colors <= 16)
+            return 4;
+        return 8;
+    }
+
+    static void packBits(byte[] pixels, int from, int count, int bits, byte[] bytes, int offset) {
+        int perByte = 8 / bits;
+        int mask = (1 << bits) - 1;
+        for (int i = 0; i < count; i++) {
+            int shift = 8 - bits * (i % perByte + 1);
+            bytes[offset + i / perByte] |= (byte) ((pixels[from + i] & mask) << shift);
+        }
+    }
+
+    static void unpackBits(byte[] bytes, int offset, byte[] pixels, int from, int count, int bits) {
+        int perByte = 8 / bits;
+        int mask = (1 << bits) - 1;
+        for (int i = 0; i < count; i++) {
+            int shift = 8 - bits * (i % perByte + 1);
+            pixels[from + i] = (byte) ((bytes[offset + i / perByte] >> shift) & mask);
+        }
+    }
+
+    static int packedSize(int count, int bits) {
+        return (count * bits + 7) / 8;
+    }
+
+    private static int maxRun(int bits) {
+        return bits == 8 ? 256 : 1 << (8 - bits);
+    }
+
+    private static int runsSize(byte[] pixels, int count, int bits) {
+        int maxRun = Pixmap.maxRun(bits);
+        int runs = 0;
+        int i = 0;
+        while (i < count) {
+            int length = 1;
+            while (i + length < count && length < maxRun && pixels[i + length] == pixels[i])
+                length++;
+            runs++;
+            i += length;
+        }
+        return bits == 8 ? runs * 2 : runs;
+    }
+
+    private static void packRuns(byte[] pixels, int count, int bits, byte[] bytes, int offset) {
+        int maxRun = Pixmap.maxRun(bits);
+        int position = offset;
+        int i = 0;
+        while (i < count) {
+            int length = 1;
+            while (i + length < count && length < maxRun && pixels[i + length] == pixels[i])
+                length++;
+            if (bits == 8) {
+                bytes[position++] = (byte) (length - 1);
+                bytes[position++] = pixels[i];
+            } else {
+                bytes[position++] = (byte) ((length - 1) << bits | pixels[i]);
+            }
+            i += length;
+        }
+    }
+
+    private static void unpackRuns(byte[] bytes, int offset, byte[] pixels, int count, int bits) {
+        int mask = (1 << bits) - 1;
+        int position = offset;
+        int i = 0;
+        while (i < count) {
+            int length;
+            byte pixel;
+            if (bits == 8) {
+                length = (bytes[position++] & 0xff) + 1;
+                pixel = bytes[position++];
+            } else {
+                int run = bytes[position++] & 0xff;
+                length = (run >> bits) + 1;
+                pixel = (byte) (run & mask);
+            }
+            if (i + length > count)
+                throw new IllegalArgumentException("pixmap run overflows image");
+            Arrays.fill(pixels, i, i + length, pixel);
+            i += length;
+        }
+    }
+
     public String display() {
         StringBuilder builder = new StringBuilder();
         int i = 0;
-        for (byte yi = 0; yi < this.y; yi++) {
-            for (byte xi = 0; xi < this.x; xi++) {
+        for (int yi = 0; yi < this.y; yi++) {
+            for (int xi = 0; xi < this.x; xi++) {
                 byte pixel = this.pixels[i++];
                 builder.append(this.lut.lookup(pixel));
             }
@@ -80,6 +239,20 @@ public class Pixmap {
     public static final LUT LUT_2W = new LUT(new String[]{"  ", "██"});
     public static final LUT LUT_4W = new LUT(new String[]{"  ", "░░", "▓▓", "██"});
 
+    private static final int headerSize = 3;
+    private static final int maxSide = 127;
+    static final int FORMAT_MARK = 0x80;
+    static final int FORMAT_RLE = 0x40;
+    static final int KIND_MASK = 0x30;
+    static final int KIND_PLAIN = 0x00;
+    static final int KIND_TILE = 0x10;
+    static final int KIND_KEYFRAME = 0x20;
+    static final int KIND_DELTA = 0x30;
+    static final int BITS_MASK = 0x0f;
+    static final int STREAM_HEADER = 6;
+    static final int TILE_HEADER = 11;
+    static final int MAX_PIXELS = 1 << 24;
+
     public static class LUT {
         private final String[] glyphs;
 
@@ -90,5 +263,9 @@ public class Pixmap {
         public String lookup(byte pixel) {
             return this.glyphs[pixel];
         }
+
+        public int size() {
+            return this.glyphs.length;
+        }
     }
 }
\ No newline at end of file
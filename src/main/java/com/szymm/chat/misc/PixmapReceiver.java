@@ -0,0 +1,166 @@
+package com.szymm.chat.misc;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class PixmapReceiver {
+    private final Pixmap.LUT lut;
+    private final Map<Integer, Stream> streams;
+    private final Map<Integer, Canvas> canvases;
+    private byte[] tilePixels;
+
+    public PixmapReceiver(Pixmap.LUT lut) {
+        this.lut = lut;
+        this.streams = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Stream> eldest) {
+                return this.size() > PixmapReceiver.maxStreams;
+            }
+        };
+        this.canvases = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Canvas> eldest) {
+                return this.size() > PixmapReceiver.maxCanvases;
+            }
+        };
+        this.tilePixels = new byte[0];
+    }
+
+    public Optional<Pixmap> accept(byte[] frameBytes) {
+        int format = frameBytes[0] & 0xff;
+        if ((format & Pixmap.FORMAT_MARK) == 0)
+            return Optional.of(Pixmap.decode(frameBytes, this.lut));
+        return switch (format & Pixmap.KIND_MASK) {
+            case Pixmap.KIND_TILE -> Optional.of(this.acceptTile(frameBytes, format));
+            case Pixmap.KIND_KEYFRAME -> Optional.of(this.acceptKeyframe(frameBytes));
+            case Pixmap.KIND_DELTA -> this.acceptDelta(frameBytes, format);
+            default -> Optional.of(Pixmap.decode(frameBytes, this.lut));
+        };
+    }
+
+    public boolean isPartial(Pixmap pixmap) {
+        for (Canvas canvas : this.canvases.values()) {
+            if (canvas.pixmap == pixmap)
+                return canvas.received.cardinality() < canvas.tileCount;
+        }
+        return false;
+    }
+
+    private Pixmap acceptKeyframe(byte[] frameBytes) {
+        int streamId = PixmapStream.intAt(frameBytes, 1);
+        int keySeq = PixmapStream.shortAt(frameBytes, 5);
+        Stream stream = new Stream(keySeq, Pixmap.decode(frameBytes, this.lut));
+        this.streams.put(streamId, stream);
+        return stream.current;
+    }
+
+    private Optional<Pixmap> acceptDelta(byte[] frameBytes, int format) {
+        int streamId = PixmapStream.intAt(frameBytes, 1);
+        int keySeq = PixmapStream.shortAt(frameBytes, 5);
+        Stream stream = this.streams.get(streamId);
+        if (stream == null || stream.keySeq != keySeq)
+            return Optional.empty();
+        stream.apply(frameBytes, Pixmap.bitsOf(format));
+        return Optional.of(stream.current);
+    }
+
+    private Pixmap acceptTile(byte[] frameBytes, int format) {
+        int imageId = PixmapStream.intAt(frameBytes, 1);
+        int width = PixmapStream.shortAt(frameBytes, 5);
+        int height = PixmapStream.shortAt(frameBytes, 7);
+        int index = PixmapStream.shortAt(frameBytes, 9);
+        int tileSize = frameBytes[11] & 0xff;
+        if (width == 0 || height == 0 || tileSize == 0 || (long) width * height > Pixmap.MAX_PIXELS)
+            throw new IllegalArgumentException("bad pixmap tile: " + width + "x" + height + "/" + tileSize);
+        Canvas canvas = this.canvases.get(imageId);
+        if (canvas == null || !canvas.fits(width, height, tileSize)) {
+            canvas = new Canvas(new Pixmap(width, height, new byte[width * height], this.lut), tileSize);
+            this.canvases.put(imageId, canvas);
+        }
+        if (index >= canvas.tileCount)
+            throw new IllegalArgumentException("pixmap tile out of range: " + index);
+
+        int left = index % canvas.columns * tileSize;
+        int top = index / canvas.columns * tileSize;
+        int tileWidth = Math.min(tileSize, width - left);
+        int tileHeight = Math.min(tileSize, height - top);
+        if (this.tilePixels.length < tileSize * tileSize)
+            this.tilePixels = new byte[tileSize * tileSize];
+        Pixmap.decodePixels(frameBytes, 1 + Pixmap.TILE_HEADER, format, this.tilePixels, tileWidth * tileHeight);
+        byte[] pixels = canvas.pixmap.pixels();
+        for (int row = 0; row < tileHeight; row++)
+            System.arraycopy(this.tilePixels, row * tileWidth, pixels, (top + row) * width + left, tileWidth);
+        canvas.received.set(index);
+        return canvas.pixmap;
+    }
+
+    private static class Canvas {
+        private final Pixmap pixmap;
+        private final int tileSize;
+        private final int columns;
+        private final int tileCount;
+        private final BitSet received;
+
+        private Canvas(Pixmap pixmap, int tileSize) {
+            this.pixmap = pixmap;
+            this.tileSize = tileSize;
+            this.columns = (pixmap.getX() + tileSize - 1) / tileSize;
+            this.tileCount = this.columns * ((pixmap.getY() + tileSize - 1) / tileSize);
+            this.received = new BitSet(this.tileCount);
+        }
+
+        private boolean fits(int width, int height, int tileSize) {
+            return this.pixmap.getX() == width && this.pixmap.getY() == height && this.tileSize == tileSize;
+        }
+    }
+
+    private static class Stream {
+        private final int keySeq;
+        private final byte[] keyPixels;
+        private final Pixmap current;
+        private int[] applied;
+        private int appliedCount;
+
+        private Stream(int keySeq, Pixmap keyframe) {
+            this.keySeq = keySeq;
+            this.keyPixels = keyframe.pixels().clone();
+            this.current = keyframe;
+            this.applied = new int[16];
+            this.appliedCount = 0;
+        }
+
+        private void apply(byte[] frameBytes, int bits) {
+            byte[] pixels = this.current.pixels();
+            int position = 1 + Pixmap.STREAM_HEADER;
+            if (frameBytes[position] != this.current.getX() || frameBytes[position + 1] != this.current.getY())
+                throw new IllegalArgumentException("pixmap delta size mismatch");
+            position += 2;
+            for (int run = 0; run < this.appliedCount; run++) {
+                int start = this.applied[run * 2];
+                System.arraycopy(this.keyPixels, start, pixels, start, this.applied[run * 2 + 1]);
+            }
+            this.appliedCount = 0;
+            int runCount = PixmapStream.shortAt(frameBytes, position);
+            position += 2;
+            if (runCount * 2 > this.applied.length)
+                this.applied = new int[runCount * 2];
+            for (int run = 0; run < runCount; run++) {
+                int start = PixmapStream.shortAt(frameBytes, position);
+                int length = PixmapStream.shortAt(frameBytes, position + 2);
+                position += 4;
+                if (start + length > pixels.length)
+                    throw new IllegalArgumentException("pixmap delta run overflows image");
+                this.applied[run * 2] = start;
+                this.applied[run * 2 + 1] = length;
+                this.appliedCount++;
+                Pixmap.unpackBits(frameBytes, position, pixels, start, length, bits);
+                position += Pixmap.packedSize(length, bits);
+            }
+        }
+    }
+
+    private static final int maxStreams = 64;
+    private static final int maxCanvases = 4;
+}
@@ -0,0 +1,136 @@
+package com.szymm.chat.misc;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class PixmapStream {
+    private final int streamId;
+    private final int keyframeInterval;
+    private Pixmap keyframe;
+    private int keySeq;
+    private int sinceKeyframe;
+
+    public PixmapStream(int streamId, int keyframeInterval) {
+        if (keyframeInterval <= 0)
+            throw new IllegalArgumentException("keyframe interval must be positive");
+        this.streamId = streamId;
+        this.keyframeInterval = keyframeInterval;
+        this.keyframe = null;
+        this.keySeq = 0;
+        this.sinceKeyframe = 0;
+    }
+
+    public PixmapStream(int keyframeInterval) {
+        this(ThreadLocalRandom.current().nextInt(), keyframeInterval);
+    }
+
+    public int getStreamId() {
+        return this.streamId;
+    }
+
+    public byte[] encode(Pixmap pixmap) {
+        if (pixmap.isLarge())
+            throw new IllegalArgumentException("pixmap too large to stream, send it with PixmapTiler");
+        if (!this.canDelta(pixmap))
+            return this.encodeKeyframe(pixmap);
+        byte[] delta = this.encodeDelta(pixmap);
+        if (delta == null)
+            return this.encodeKeyframe(pixmap);
+        this.sinceKeyframe++;
+        return delta;
+    }
+
+    private boolean canDelta(Pixmap pixmap) {
+        return this.keyframe != null
+                && this.sinceKeyframe < this.keyframeInterval
+                && this.keyframe.getX() == pixmap.getX()
+                && this.keyframe.getY() == pixmap.getY()
+                && this.keyframe.getLUT().size() == pixmap.getLUT().size();
+    }
+
+    private byte[] encodeKeyframe(Pixmap pixmap) {
+        byte[] pixmapBytes = pixmap.encode();
+        this.keyframe = new Pixmap(pixmap.getX(), pixmap.getY(),
+                Arrays.copyOf(pixmap.pixels(), pixmap.pixels().length), pixmap.getLUT());
+        this.keySeq = (this.keySeq + 1) & 0xffff;
+        this.sinceKeyframe = 0;
+        byte[] frameBytes = new byte[pixmapBytes.length + Pixmap.STREAM_HEADER];
+        frameBytes[0] = (byte) (pixmapBytes[0] | Pixmap.KIND_KEYFRAME);
+        this.putStreamHeader(frameBytes);
+        System.arraycopy(pixmapBytes, 1, frameBytes, 1 + Pixmap.STREAM_HEADER, pixmapBytes.length - 1);
+        return frameBytes;
+    }
+
+    private byte[] encodeDelta(Pixmap pixmap) {
+        byte[] base = this.keyframe.pixels();
+        byte[] pixels = pixmap.pixels();
+        int bits = Pixmap.bitsFor(pixmap.getLUT().size());
+        int[] runs = new int[16];
+        int runCount = 0;
+        int size = 0;
+        int i = 0;
+        while (i < pixels.length) {
+            if (pixels[i] == base[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end = i + 1;
+            for (int j = end; j < pixels.length && j - end <= PixmapStream.mergeGap; j++) {
+                if (pixels[j] != base[j])
+                    end = j + 1;
+            }
+            if (runCount * 2 == runs.length)
+                runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[runCount * 2] = start;
+            runs[runCount * 2 + 1] = end - start;
+            runCount++;
+            size += 4 + Pixmap.packedSize(end - start, bits);
+            i = end;
+        }
+        int headerSize = 1 + Pixmap.STREAM_HEADER + 2 + 2;
+        if (runCount > 0xffff || size >= Pixmap.packedSize(pixels.length, bits))
+            return null;
+
+        byte[] frameBytes = new byte[headerSize + size];
+        frameBytes[0] = (byte) (Pixmap.FORMAT_MARK | Pixmap.KIND_DELTA | bits);
+        this.putStreamHeader(frameBytes);
+        int position = 1 + Pixmap.STREAM_HEADER;
+        frameBytes[position++] = (byte) pixmap.getX();
+        frameBytes[position++] = (byte) pixmap.getY();
+        position = PixmapStream.putShort(frameBytes, position, runCount);
+        for (int run = 0; run < runCount; run++) {
+            int start = runs[run * 2];
+            int length = runs[run * 2 + 1];
+            position = PixmapStream.putShort(frameBytes, position, start);
+            position = PixmapStream.putShort(frameBytes, position, length);
+            Pixmap.packBits(pixels, start, length, bits, frameBytes, position);
+            position += Pixmap.packedSize(length, bits);
+        }
+        return frameBytes;
+    }
+
+    private void putStreamHeader(byte[] frameBytes) {
+        frameBytes[1] = (byte) this.streamId;
+        frameBytes[2] = (byte) (this.streamId >>> 8);
+        frameBytes[3] = (byte) (this.streamId >>> 16);
+        frameBytes[4] = (byte) (this.streamId >>> 24);
+        PixmapStream.putShort(frameBytes, 5, this.keySeq);
+    }
+
+    static int putShort(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) value;
+        bytes[position + 1] = (byte) (value >>> 8);
+        return position + 2;
+    }
+
+    static int shortAt(byte[] bytes, int position) {
+        return (bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8;
+    }
+
+    static int intAt(byte[] bytes, int position) {
+        return PixmapStream.shortAt(bytes, position) | PixmapStream.shortAt(bytes, position + 2) << 16;
+    }
+
+    private static final int mergeGap = 8;
+}
@@ -0,0 +1,64 @@
+package com.szymm.chat.misc;
+
+public class PixmapTiler {
+    private final Pixmap pixmap;
+    private final int imageId;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+    private final int bits;
+    private final byte[] tilePixels;
+
+    public PixmapTiler(Pixmap pixmap, int imageId, int tileSize) {
+        if (tileSize <= 0 || tileSize > 0xff)
+            throw new IllegalArgumentException("tile size must be within 1..255");
+        if (pixmap.getX() > 0xffff || pixmap.getY() > 0xffff
+                || (long) pixmap.getX() * pixmap.getY() > Pixmap.MAX_PIXELS)
+            throw new IllegalArgumentException("pixmap too large: " + pixmap.getX() + "x" + pixmap.getY());
+        this.pixmap = pixmap;
+        this.imageId = imageId;
+        this.tileSize = tileSize;
+        this.columns = (pixmap.getX() + tileSize - 1) / tileSize;
+        this.rows = (pixmap.getY() + tileSize - 1) / tileSize;
+        if (this.columns * this.rows > 0xffff)
+            throw new IllegalArgumentException("too many tiles, use a larger tile size");
+        this.bits = Pixmap.bitsFor(pixmap.getLUT().size());
+        this.tilePixels = new byte[tileSize * tileSize];
+    }
+
+    public PixmapTiler(Pixmap pixmap, int imageId) {
+        this(pixmap, imageId, PixmapTiler.tileSizeFor(Pixmap.bitsFor(pixmap.getLUT().size())));
+    }
+
+    public int getTileCount() {
+        return this.columns * this.rows;
+    }
+
+    public byte[] encodeTile(int index) {
+        if (index < 0 || index >= this.getTileCount())
+            throw new IndexOutOfBoundsException("no tile " + index);
+        int left = index % this.columns * this.tileSize;
+        int top = index / this.columns * this.tileSize;
+        int width = Math.min(this.tileSize, this.pixmap.getX() - left);
+        int height = Math.min(this.tileSize, this.pixmap.getY() - top);
+        byte[] pixels = this.pixmap.pixels();
+        for (int row = 0; row < height; row++)
+            System.arraycopy(pixels, (top + row) * this.pixmap.getX() + left, this.tilePixels, row * width, width);
+
+        byte[] tileBytes = Pixmap.encodePixels(this.tilePixels, width * height, this.bits, 1 + Pixmap.TILE_HEADER);
+        tileBytes[0] |= (byte) Pixmap.KIND_TILE;
+        tileBytes[1] = (byte) this.imageId;
+        tileBytes[2] = (byte) (this.imageId >>> 8);
+        tileBytes[3] = (byte) (this.imageId >>> 16);
+        tileBytes[4] = (byte) (this.imageId >>> 24);
+        PixmapStream.putShort(tileBytes, 5, this.pixmap.getX());
+        PixmapStream.putShort(tileBytes, 7, this.pixmap.getY());
+        PixmapStream.putShort(tileBytes, 9, index);
+        tileBytes[11] = (byte) this.tileSize;
+        return tileBytes;
+    }
+
+    private static int tileSizeFor(int bits) {
+        return bits <= 2 ? 64 : 32;
+    }
+}
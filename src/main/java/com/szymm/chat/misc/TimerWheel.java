@@ -0,0 +1,79 @@
+package com.szymm.chat.misc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class TimerWheel {
+    private final List<ArrayDeque<Timeout>> slots;
+    private final Queue<Timeout> pending;
+    private final long tickNanos;
+    private final long startNanos;
+    private final int mask;
+    private long tick;
+
+    public TimerWheel(int slotCount, long tickMillis) {
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1)
+            throw new IllegalArgumentException("slot count must be a power of two");
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("tick must be positive");
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++)
+            this.slots.add(new ArrayDeque<>());
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.tickNanos = tickMillis * 1_000_000L;
+        this.startNanos = System.nanoTime();
+        this.mask = slotCount - 1;
+        this.tick = 0;
+    }
+
+    public void schedule(Runnable task, long delayNanos) {
+        this.pending.add(new Timeout(task, System.nanoTime() + delayNanos));
+    }
+
+    public void advance(long now) {
+        long target = (now - this.startNanos) / this.tickNanos;
+        while (this.tick <= target) {
+            this.insertPending();
+            ArrayDeque<Timeout> slot = this.slots.get((int) (this.tick & this.mask));
+            for (int i = slot.size(); i > 0; i--) {
+                Timeout timeout = slot.poll();
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    slot.add(timeout);
+                } else {
+                    timeout.task.run();
+                }
+            }
+            this.tick++;
+        }
+    }
+
+    private void insertPending() {
+        Timeout timeout;
+        while ((timeout = this.pending.poll()) != null) {
+            long deadlineTick = (timeout.deadlineNanos - this.startNanos + this.tickNanos - 1) / this.tickNanos;
+            deadlineTick = Math.max(deadlineTick, this.tick);
+            timeout.rounds = (deadlineTick - this.tick) / this.slots.size();
+            this.slots.get((int) (deadlineTick & this.mask)).add(timeout);
+        }
+    }
+
+    public long getTickMillis() {
+        return this.tickNanos / 1_000_000L;
+    }
+
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long rounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.rounds = 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.szymm.chat.net;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+final class BinaryCodec {
+    private BinaryCodec() {
+    }
+
+    static boolean isBinary(byte[] messageBytes) {
+        return messageBytes.length > 0 && messageBytes[0] == BinaryCodec.VERSION;
+    }
+
+    static byte[] encode(Message message) {
+        byte[] originBytes = message.origin.getBytes(BinaryCodec.charset);
+        byte[] typeBytes = message.opcode == Opcode.OTHER ? message.type.getBytes(BinaryCodec.charset) : null;
+        byte[] targetBytes = message.opcode == Opcode.DM ? message.target.getBytes(BinaryCodec.charset) : null;
+        byte[] textBytes = message.text.getBytes(BinaryCodec.charset);
+
+        int size = 2 + BinaryCodec.varintSize(message.senderId + 1) + BinaryCodec.fieldSize(originBytes)
+                + BinaryCodec.fieldSize(typeBytes) + BinaryCodec.fieldSize(targetBytes) + textBytes.length;
+        byte[] bytes = new byte[size + 4];
+        bytes[0] = (byte) size;
+        bytes[1] = (byte) (size >>> 8);
+        bytes[2] = (byte) (size >>> 16);
+        bytes[3] = (byte) (size >>> 24);
+        int position = 4;
+        bytes[position++] = BinaryCodec.VERSION;
+        bytes[position++] = (byte) message.opcode.code;
+        position = BinaryCodec.putVarint(bytes, position, message.senderId + 1);
+        position = BinaryCodec.putField(bytes, position, originBytes);
+        position = BinaryCodec.putField(bytes, position, typeBytes);
+        position = BinaryCodec.putField(bytes, position, targetBytes);
+        System.arraycopy(textBytes, 0, bytes, position, textBytes.length);
+        return bytes;
+    }
+
+    static Message decode(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        reader.position = 1;
+        Opcode opcode = Opcode.of(reader.getByte());
+        int senderId = reader.getVarint() - 1;
+        String origin = reader.getString();
+        String type = opcode == Opcode.OTHER ? reader.getString() : opcode.type;
+        String target = opcode == Opcode.DM ? reader.getString() : "";
+        String text = reader.getRest();
+        return new Message(senderId, origin, opcode, type, target, text);
+    }
+
+    private static int fieldSize(byte[] field) {
+        if (field == null)
+            return 0;
+        return BinaryCodec.varintSize(field.length) + field.length;
+    }
+
+    private static int putField(byte[] bytes, int position, byte[] field) {
+        if (field == null)
+            return position;
+        position = BinaryCodec.putVarint(bytes, position, field.length);
+        System.arraycopy(field, 0, bytes, position, field.length);
+        return position + field.length;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int putVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            bytes[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+            this.position = 0;
+        }
+
+        private int getByte() {
+            if (this.position >= this.bytes.length)
+                throw new IllegalArgumentException("truncated message");
+            return this.bytes[this.position++] & 0xff;
+        }
+
+        private int getVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = this.getByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("varint too long");
+        }
+
+        private String getString() {
+            int length = this.getVarint();
+            if (length < 0 || length > this.bytes.length - this.position)
+                throw new IllegalArgumentException("truncated message");
+            String value = new String(this.bytes, this.position, length, BinaryCodec.charset);
+            this.position += length;
+            return value;
+        }
+
+        private String getRest() {
+            String value = new String(this.bytes, this.position, this.bytes.length - this.position, BinaryCodec.charset);
+            this.position = this.bytes.length;
+            return value;
+        }
+    }
+
+    static final byte VERSION = 0x01;
+    private static final Charset charset = StandardCharsets.UTF_8;
+}
@@ -0,0 +1,56 @@
+package com.szymm.chat.net;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class BufferPool {
+    private final int slabSize;
+    private final BlockingQueue<ByteBuffer> slabs;
+
+    public BufferPool(int slabSize, int maxSlabs) {
+        this.slabSize = slabSize;
+        this.slabs = new ArrayBlockingQueue<>(maxSlabs);
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer slab = this.slabs.poll();
+        if (slab == null)
+            return BufferPool.allocate(this.slabSize);
+        return slab.clear();
+    }
+
+    public ByteBuffer acquire(int size) {
+        if (size > this.slabSize)
+            return BufferPool.allocate(size);
+        return this.acquire();
+    }
+
+    public ByteBuffer ensure(ByteBuffer buffer, int extra) {
+        if (buffer == null)
+            return this.acquire(extra);
+        if (buffer.remaining() >= extra)
+            return buffer;
+        ByteBuffer grown = BufferPool.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+        buffer.flip();
+        grown.put(buffer);
+        this.release(buffer);
+        return grown;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == this.slabSize)
+            this.slabs.offer(buffer);
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size)
+                .order(BufferPool.byteOrder);
+    }
+
+    private static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+
+    public static final BufferPool TCP = new BufferPool(960, 256);
+    public static final BufferPool UDP = new BufferPool(4032, 256);
+}
@@ -5,8 +5,12 @@ import java.io.IOException;
 public interface Endpoint extends AutoCloseable {
     byte[] read(int size) throws IOException;
     void put(byte[] bytes) throws IOException;
+    void putInt(int value) throws IOException;
     void reset();
     void send() throws IOException;
     boolean isUp();
     Address getRemoteAddress();
+    long getBytesIn();
+    long getBytesOut();
+    long getLastActiveNanos();
 }
@@ -3,40 +3,122 @@ package com.szymm.chat.net;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Frame {
     public final int size;
     public final byte[] bytes;
+    public final boolean reliable;
 
-    public Frame(byte[] bytes) {
+    public Frame(byte[] bytes, boolean reliable) {
         this.size = bytes.length;
         this.bytes = bytes;
+        this.reliable = reliable;
+    }
+
+    public Frame(byte[] bytes) {
+        this(bytes, false);
     }
 
     public static Frame from(UDPEndpoint endpoint) throws IOException {
-        int size = Frame.intFromBytes(endpoint.read(4));
-        byte[] frameBytes = endpoint.read(size);
-        return new Frame(frameBytes);
+        int header = Frame.intFromBytes(endpoint.read(4));
+        byte[] frameBytes = endpoint.read(header & ~Frame.RELIABLE_FLAG);
+        return new Frame(frameBytes, (header & Frame.RELIABLE_FLAG) != 0);
+    }
+
+    public static int sizeOf(byte[] datagram, int length) {
+        if (length < 4)
+            return -1;
+        int size = Frame.intAt(datagram, 0);
+        if (size < 0 || size > length - 4)
+            return -1;
+        return size;
+    }
+
+    public static boolean isFragment(byte[] datagram, int length) {
+        return length >= Frame.FRAGMENT_HEADER && Frame.intAt(datagram, 0) == Frame.FRAGMENT_MARK;
+    }
+
+    public static boolean startsFrame(byte[] datagram, int length) {
+        return !Frame.isFragment(datagram, length) || Frame.shortAt(datagram, 8) == 0;
+    }
+
+    static boolean isReliable(byte[] datagram, int length) {
+        return length >= Frame.RELIABLE_HEADER && Frame.intAt(datagram, 0) == Frame.RELIABLE_MARK;
+    }
+
+    static boolean isAck(byte[] datagram, int length) {
+        return length >= Frame.ACK_SIZE && Frame.intAt(datagram, 0) == Frame.ACK_MARK;
     }
 
     public void sendTo(UDPEndpoint endpoint) throws IOException {
-        byte[] sizeBytes = Frame.intToBytes(this.size);
-        endpoint.reset();
-        endpoint.put(sizeBytes);
-        endpoint.put(this.bytes);
-        endpoint.send();
+        if (this.size + 4 > Frame.MAX_DATAGRAM) {
+            this.sendFragmentsTo(endpoint);
+            return;
+        }
+        ByteBuffer buffer = BufferPool.UDP.acquire(this.size + 4);
+        try {
+            buffer.putInt(this.size);
+            buffer.put(this.bytes);
+            this.send(endpoint, buffer);
+        } finally {
+            BufferPool.UDP.release(buffer);
+        }
     }
 
-    private static byte[] intToBytes(int value) {
-        return ByteBuffer.allocate(4)
-                .order(Frame.byteOrder)
-                .putInt(value)
-                .array();
+    private void sendFragmentsTo(UDPEndpoint endpoint) throws IOException {
+        int frameId = Frame.nextFrameId.getAndIncrement();
+        int count = (this.size + Frame.FRAGMENT_CHUNK - 1) / Frame.FRAGMENT_CHUNK;
+        if (count > 0xffff)
+            throw new IOException("frame too large: " + this.size);
+        ByteBuffer buffer = BufferPool.UDP.acquire(Frame.MAX_DATAGRAM);
+        try {
+            for (int index = 0; index < count; index++) {
+                int offset = index * Frame.FRAGMENT_CHUNK;
+                int chunkSize = Math.min(Frame.FRAGMENT_CHUNK, this.size - offset);
+                buffer.clear();
+                buffer.putInt(Frame.FRAGMENT_MARK);
+                buffer.putInt(frameId);
+                buffer.putShort((short) index);
+                buffer.putShort((short) count);
+                buffer.putInt(this.size);
+                buffer.put(this.bytes, offset, chunkSize);
+                this.send(endpoint, buffer);
+            }
+        } finally {
+            BufferPool.UDP.release(buffer);
+        }
+    }
+
+    private void send(UDPEndpoint endpoint, ByteBuffer buffer) throws IOException {
+        if (this.reliable)
+            endpoint.sendReliable(buffer);
+        else
+            endpoint.send(buffer);
+    }
+
+    static int intAt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    static int shortAt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
     }
 
     @Override
     public String toString() {
-        StringBuilder builder = new StringBuilder();
+        StringBuilder builder = new StringBuilder(this.size * 3 + this.size / 8);
         int count = 0;
         for (byte item : this.bytes) {
             if (count > 16)
@@ -50,10 +132,10 @@ public class Frame {
                 builder.append(" ");
             }
             count++;
-            builder.append(String.format("%02x", item));
+            builder.append(Frame.hexDigits[(item >> 4) & 0xf])
+                    .append(Frame.hexDigits[item & 0xf]);
         }
-        String value = builder.toString();
-        return "[frame] len: %s%s".formatted(this.size, value);
+        return "[frame] len: " + this.size + (this.reliable ? " reliable" : "") + builder;
     }
 
     private static int intFromBytes(byte[] bytes) {
@@ -63,4 +145,16 @@ public class Frame {
     }
 
     private static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+    private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+    private static final AtomicInteger nextFrameId = new AtomicInteger();
+
+    public static final int MAX_DATAGRAM = 1400;
+    static final int FRAGMENT_MARK = -1;
+    static final int FRAGMENT_HEADER = 16;
+    static final int FRAGMENT_CHUNK = Frame.MAX_DATAGRAM - Frame.FRAGMENT_HEADER;
+    static final int RELIABLE_MARK = -2;
+    static final int RELIABLE_HEADER = 12;
+    static final int RELIABLE_FLAG = 0x40000000;
+    static final int ACK_MARK = -3;
+    static final int ACK_SIZE = 16;
 }
@@ -0,0 +1,108 @@
+package com.szymm.chat.net;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class FrameAssembler {
+    private final Map<Integer, Partial> partials;
+    private final int maxPending;
+    private final int maxFrameSize;
+    private final long timeoutNanos;
+    private long expiredCount;
+
+    public FrameAssembler(int maxPending, int maxFrameSize, long timeoutMillis) {
+        this.partials = new LinkedHashMap<>();
+        this.maxPending = maxPending;
+        this.maxFrameSize = maxFrameSize;
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+        this.expiredCount = 0;
+    }
+
+    public FrameAssembler() {
+        this(8, 1 << 20, 5000);
+    }
+
+    public synchronized byte[] accept(byte[] datagram, int length) {
+        if (length < Frame.FRAGMENT_HEADER)
+            return null;
+        int frameId = Frame.intAt(datagram, 4);
+        int index = Frame.shortAt(datagram, 8);
+        int count = Frame.shortAt(datagram, 10);
+        int size = Frame.intAt(datagram, 12);
+        int chunkSize = length - Frame.FRAGMENT_HEADER;
+        int offset = index * Frame.FRAGMENT_CHUNK;
+        if (size < 0 || size > this.maxFrameSize || index >= count)
+            return null;
+        if (count != Math.max(1, (size + Frame.FRAGMENT_CHUNK - 1) / Frame.FRAGMENT_CHUNK))
+            return null;
+        int expectedChunk = index == count - 1 ? size - offset : Frame.FRAGMENT_CHUNK;
+        if (chunkSize != expectedChunk)
+            return null;
+
+        long now = System.nanoTime();
+        this.expire(now);
+        Partial partial = this.partials.get(frameId);
+        if (partial == null) {
+            if (this.partials.size() >= this.maxPending)
+                this.evictOldest();
+            partial = new Partial(size, count, now);
+            this.partials.put(frameId, partial);
+        }
+        if (partial.count != count || partial.wireBytes.length != size + 4)
+            return null;
+        if (!partial.received.get(index)) {
+            System.arraycopy(datagram, Frame.FRAGMENT_HEADER, partial.wireBytes, offset + 4, chunkSize);
+            partial.received.set(index);
+        }
+        if (partial.received.cardinality() < count)
+            return null;
+        this.partials.remove(frameId);
+        return partial.wireBytes;
+    }
+
+    public synchronized int getPendingCount() {
+        return this.partials.size();
+    }
+
+    public synchronized long getExpiredCount() {
+        return this.expiredCount;
+    }
+
+    private void expire(long now) {
+        Iterator<Partial> iterator = this.partials.values().iterator();
+        while (iterator.hasNext()) {
+            Partial partial = iterator.next();
+            if (now - partial.startNanos < this.timeoutNanos)
+                break;
+            iterator.remove();
+            this.expiredCount++;
+        }
+    }
+
+    private void evictOldest() {
+        Iterator<Partial> iterator = this.partials.values().iterator();
+        iterator.next();
+        iterator.remove();
+        this.expiredCount++;
+    }
+
+    private static class Partial {
+        private final byte[] wireBytes;
+        private final BitSet received;
+        private final int count;
+        private final long startNanos;
+
+        private Partial(int size, int count, long startNanos) {
+            this.wireBytes = new byte[size + 4];
+            this.wireBytes[0] = (byte) size;
+            this.wireBytes[1] = (byte) (size >>> 8);
+            this.wireBytes[2] = (byte) (size >>> 16);
+            this.wireBytes[3] = (byte) (size >>> 24);
+            this.received = new BitSet(count);
+            this.count = count;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.szymm.chat.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class FrameQueue {
+    public final InputStream inStream;
+    private final Queue<byte[]> frames;
+    private final int maxBytes;
+    private final Lock lock;
+    private final Condition notEmpty;
+    private byte[] current;
+    private int position;
+    private int queuedBytes;
+    private boolean isClosed;
+
+    public FrameQueue(int maxBytes) {
+        this.frames = new ArrayDeque<>();
+        this.maxBytes = maxBytes;
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.current = null;
+        this.position = 0;
+        this.queuedBytes = 0;
+        this.isClosed = false;
+        this.inStream = new QueueInputStream();
+    }
+
+    public boolean hasRoom(int length) {
+        this.lock.lock();
+        try {
+            return this.queuedBytes == 0 || this.queuedBytes + length <= this.maxBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean offer(byte[] frameBytes, boolean force) {
+        this.lock.lock();
+        try {
+            if (this.isClosed)
+                return false;
+            if (!force && this.queuedBytes > 0 && this.queuedBytes + frameBytes.length > this.maxBytes)
+                return false;
+            this.frames.add(frameBytes);
+            this.queuedBytes += frameBytes.length;
+            this.notEmpty.signalAll();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void close() {
+        this.lock.lock();
+        try {
+            this.isClosed = true;
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        this.lock.lock();
+        try {
+            while (this.current == null) {
+                this.current = this.frames.poll();
+                this.position = 0;
+                if (this.current != null)
+                    break;
+                if (this.isClosed)
+                    return -1;
+                this.notEmpty.await();
+            }
+            int size = Math.min(length, this.current.length - this.position);
+            System.arraycopy(this.current, this.position, bytes, offset, size);
+            this.position += size;
+            if (this.position == this.current.length) {
+                this.queuedBytes -= this.current.length;
+                this.current = null;
+            }
+            return size;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("frame queue read interrupted");
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private class QueueInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = this.read(single, 0, 1);
+            return count < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return FrameQueue.this.read(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            FrameQueue.this.close();
+        }
+    }
+}
@@ -7,14 +7,34 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 public class Message {
+    public final int senderId;
     public final String origin;
+    public final Opcode opcode;
     public final String type;
+    public final String target;
     public final String text;
+    private volatile byte[] textBytes;
+    private volatile byte[] binaryBytes;
+    private volatile int wireSize;
 
     public Message(String origin, String type, String text) {
+        this(-1, origin, type, "", text);
+    }
+
+    public Message(int senderId, String origin, String type, String target, String text) {
+        this(senderId, origin, Opcode.of(type), type, target, text);
+    }
+
+    Message(int senderId, String origin, Opcode opcode, String type, String target, String text) {
+        this.senderId = senderId;
         this.origin = origin;
+        this.opcode = opcode;
         this.type = type;
+        this.target = target;
         this.text = text;
+        this.textBytes = null;
+        this.binaryBytes = null;
+        this.wireSize = -1;
     }
 
     public static Message from(String messageText) {
@@ -28,35 +48,84 @@ public class Message {
         return new Message(origin, type, value);
     }
 
+    public static Message from(byte[] messageBytes) {
+        Message message;
+        if (BinaryCodec.isBinary(messageBytes))
+            message = BinaryCodec.decode(messageBytes);
+        else
+            message = Message.from(Message.decodeBytes(messageBytes));
+        message.wireSize = messageBytes.length + 4;
+        return message;
+    }
+
     public static Message from(TCPEndpoint endpoint) throws IOException {
         int size = Message.intFromBytes(endpoint.read(4));
-        String messageText = Message.decodeBytes(endpoint.read(size));
-        return Message.from(messageText);
+        if (size < 0 || size > endpoint.getMaxMessageSize())
+            throw new IOException("bad message size: " + size);
+        return Message.from(endpoint.read(size));
+    }
+
+    public int getWireSize() {
+        int wireSize = this.wireSize;
+        return wireSize >= 0 ? wireSize : this.encode().length;
+    }
+
+    public Message withSenderId(int senderId) {
+        return new Message(senderId, this.origin, this.opcode, this.type, this.target, this.text);
+    }
+
+    public Message withSender(int senderId, String origin) {
+        return new Message(senderId, origin, this.opcode, this.type, this.target, this.text);
+    }
+
+    public byte[] encode() {
+        return this.encode(WireFormat.TEXT);
+    }
+
+    public byte[] encode(WireFormat format) {
+        if (format == WireFormat.BINARY) {
+            byte[] bytes = this.binaryBytes;
+            if (bytes == null) {
+                bytes = BinaryCodec.encode(this);
+                this.binaryBytes = bytes;
+            }
+            return bytes;
+        }
+        byte[] bytes = this.textBytes;
+        if (bytes == null) {
+            String messageText = this.origin + " " + this.type + " " + this.textValue();
+            byte[] messageBytes = Message.encodeString(messageText);
+            int size = messageBytes.length;
+            bytes = new byte[size + 4];
+            bytes[0] = (byte) size;
+            bytes[1] = (byte) (size >>> 8);
+            bytes[2] = (byte) (size >>> 16);
+            bytes[3] = (byte) (size >>> 24);
+            System.arraycopy(messageBytes, 0, bytes, 4, size);
+            this.textBytes = bytes;
+        }
+        return bytes;
     }
 
     public void sendTo(TCPEndpoint endpoint) throws IOException {
-        String messageText = this.origin + " " + this.type + " " + this.text;
-        byte[] messageBytes = Message.encodeString(messageText);
-        int size = messageBytes.length;
-        byte[] sizeBytes = Message.intToBytes(size);
-        endpoint.reset();
-        endpoint.put(sizeBytes);
-        endpoint.put(messageBytes);
-        endpoint.send();
+        endpoint.send(this.encode(endpoint.getFormat()));
+    }
+
+    public void broadcastTo(Iterable<TCPEndpoint> endpoints) throws IOException {
+        for (TCPEndpoint endpoint : endpoints)
+            endpoint.send(this.encode(endpoint.getFormat()));
     }
 
     @Override
     public String toString() {
-        boolean hasValue = !this.text.isBlank();
-        String value = hasValue ? "'%s'".formatted(this.text) : "<empty>";
+        String textValue = this.textValue();
+        boolean hasValue = !textValue.isBlank();
+        String value = hasValue ? "'%s'".formatted(textValue) : "<empty>";
         return "[%s] %s: %s".formatted(this.type, this.origin, value);
     }
 
-    private static byte[] intToBytes(int value) {
-        return ByteBuffer.allocate(4)
-                .order(Message.byteOrder)
-                .putInt(value)
-                .array();
+    private String textValue() {
+        return this.target.isEmpty() ? this.text : this.target + ":" + this.text;
     }
 
     private static int intFromBytes(byte[] bytes) {
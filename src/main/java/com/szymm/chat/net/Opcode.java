@@ -0,0 +1,41 @@
+package com.szymm.chat.net;
+
+public enum Opcode {
+    OTHER(0, null),
+    JOIN(1, "join"),
+    PLUS_UDP(2, "+udp"),
+    PM(3, "pm"),
+    DM(4, "dm"),
+    LS(5, "ls"),
+    QUIT(6, "quit"),
+    WIRE(7, "wire"),
+    STATS(8, "stats"),
+    HISTORY(9, "history"),
+    JOIN_ROOM(10, "join-room"),
+    LEAVE_ROOM(11, "leave-room"),
+    PING(12, "ping");
+
+    public final int code;
+    public final String type;
+
+    Opcode(int code, String type) {
+        this.code = code;
+        this.type = type;
+    }
+
+    public static Opcode of(String type) {
+        for (Opcode opcode : Opcode.values) {
+            if (type.equals(opcode.type))
+                return opcode;
+        }
+        return Opcode.OTHER;
+    }
+
+    public static Opcode of(int code) {
+        if (code < 0 || code >= Opcode.values.length)
+            return Opcode.OTHER;
+        return Opcode.values[code];
+    }
+
+    private static final Opcode[] values = Opcode.values();
+}
@@ -0,0 +1,230 @@
+package com.szymm.chat.net;
+
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.metrics.Histogram;
+import com.szymm.chat.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.BooleanSupplier;
+
+public class ReliableChannel {
+    private final UDPEndpoint endpoint;
+    private final Pending[] window;
+    private final Queue<byte[]> backlog;
+    private final byte[] ack;
+    private final Counter sent;
+    private final Counter retransmits;
+    private final Counter duplicates;
+    private final Counter lost;
+    private final Counter overflow;
+    private final Histogram rtt;
+    private int sendBase;
+    private int sendNext;
+    private long srttNanos;
+    private long rttvarNanos;
+    private long rtoNanos;
+    private boolean isWatched;
+    private int receiveBase;
+    private long receiveMask;
+
+    ReliableChannel(UDPEndpoint endpoint) {
+        this.endpoint = endpoint;
+        this.window = new Pending[ReliableChannel.windowSize];
+        this.backlog = new ArrayDeque<>();
+        this.ack = new byte[Frame.ACK_SIZE];
+        this.sendBase = 0;
+        this.sendNext = 0;
+        this.srttNanos = 0;
+        this.rttvarNanos = 0;
+        this.rtoNanos = ReliableChannel.initialRtoNanos;
+        this.isWatched = false;
+        this.receiveBase = 0;
+        this.receiveMask = 0;
+        Metrics metrics = endpoint.multiplexer.getMetrics();
+        this.sent = metrics.counter("udp.reliable.sent");
+        this.retransmits = metrics.counter("udp.reliable.retransmits");
+        this.duplicates = metrics.counter("udp.reliable.duplicates");
+        this.lost = metrics.counter("udp.reliable.lost");
+        this.overflow = metrics.counter("udp.reliable.overflow");
+        this.rtt = metrics.histogram("udp.reliable.rtt.nanos");
+    }
+
+    public synchronized void send(byte[] datagram, int length) throws IOException {
+        byte[] wrapped = new byte[length + Frame.RELIABLE_HEADER];
+        Frame.putInt(wrapped, 0, Frame.RELIABLE_MARK);
+        System.arraycopy(datagram, 0, wrapped, Frame.RELIABLE_HEADER, length);
+        if (this.backlog.isEmpty() && this.sendNext - this.sendBase < ReliableChannel.windowSize) {
+            this.transmit(wrapped, System.nanoTime());
+        } else if (this.backlog.size() < ReliableChannel.maxBacklog) {
+            this.backlog.add(wrapped);
+        } else {
+            this.overflow.increment();
+        }
+    }
+
+    synchronized boolean receive(int seq, int floor, BooleanSupplier admission) throws IOException {
+        int skip = floor - this.receiveBase;
+        if (skip > 0) {
+            this.receiveMask = skip >= 64 ? 0 : this.receiveMask >>> skip;
+            this.receiveBase = floor;
+            this.consume();
+        }
+        int offset = seq - this.receiveBase;
+        if (offset >= 64)
+            return false;
+        boolean isFresh = offset >= 0 && (this.receiveMask >>> offset & 1) == 0;
+        if (isFresh && !admission.getAsBoolean())
+            return false;
+        if (isFresh) {
+            this.receiveMask |= 1L << offset;
+            this.consume();
+        } else {
+            this.duplicates.increment();
+        }
+        Frame.putInt(this.ack, 0, Frame.ACK_MARK);
+        Frame.putInt(this.ack, 4, this.receiveBase);
+        Frame.putInt(this.ack, 8, (int) (this.receiveMask >>> 1));
+        Frame.putInt(this.ack, 12, (int) (this.receiveMask >>> 33));
+        this.endpoint.send(this.ack, this.ack.length);
+        return isFresh;
+    }
+
+    private void consume() {
+        while ((this.receiveMask & 1) != 0) {
+            this.receiveMask >>>= 1;
+            this.receiveBase++;
+        }
+    }
+
+    synchronized void acknowledge(byte[] datagram) throws IOException {
+        int cumulative = Frame.intAt(datagram, 4);
+        long sack = Integer.toUnsignedLong(Frame.intAt(datagram, 8)) | (long) Frame.intAt(datagram, 12) << 32;
+        long now = System.nanoTime();
+        for (int seq = this.sendBase; seq - cumulative < 0 && seq - this.sendNext < 0; seq++)
+            this.settle(seq, now);
+        int highest = cumulative;
+        for (long bits = sack; bits != 0; bits &= bits - 1) {
+            highest = cumulative + 1 + Long.numberOfTrailingZeros(bits);
+            if (highest - this.sendBase >= 0 && highest - this.sendNext < 0)
+                this.settle(highest, now);
+        }
+        for (int seq = this.sendBase; seq - highest < 0 && seq - this.sendNext < 0; seq++) {
+            Pending pending = this.window[seq & ReliableChannel.windowMask];
+            if (pending != null && pending.attempts == 1 && now - pending.sentNanos > this.srttNanos)
+                this.resend(pending, now);
+        }
+        this.advance(now);
+    }
+
+    synchronized void retransmit(long now) throws IOException {
+        for (int seq = this.sendBase; seq - this.sendNext < 0; seq++) {
+            int slot = seq & ReliableChannel.windowMask;
+            Pending pending = this.window[slot];
+            if (pending == null || now - pending.deadlineNanos < 0)
+                continue;
+            if (pending.attempts >= ReliableChannel.maxAttempts) {
+                this.window[slot] = null;
+                this.lost.increment();
+            } else {
+                this.resend(pending, now);
+            }
+        }
+        this.advance(now);
+        if (this.sendBase != this.sendNext)
+            return;
+        this.isWatched = false;
+        this.endpoint.multiplexer.unwatch(this);
+    }
+
+    public synchronized int getInFlight() {
+        return this.sendNext - this.sendBase + this.backlog.size();
+    }
+
+    public synchronized long getRtoMillis() {
+        return this.rtoNanos / 1_000_000;
+    }
+
+    private void transmit(byte[] wrapped, long now) throws IOException {
+        int seq = this.sendNext++;
+        Frame.putInt(wrapped, 4, seq);
+        Pending pending = new Pending(seq, wrapped, now, now + this.rtoNanos);
+        this.window[seq & ReliableChannel.windowMask] = pending;
+        this.put(pending);
+        this.sent.increment();
+        if (!this.isWatched) {
+            this.isWatched = true;
+            this.endpoint.multiplexer.watch(this);
+        }
+    }
+
+    private void resend(Pending pending, long now) throws IOException {
+        pending.attempts++;
+        pending.sentNanos = now;
+        long backoff = this.rtoNanos << Math.min(pending.attempts - 1, 6);
+        pending.deadlineNanos = now + Math.min(backoff, ReliableChannel.maxRtoNanos);
+        this.put(pending);
+        this.retransmits.increment();
+    }
+
+    private void put(Pending pending) throws IOException {
+        Frame.putInt(pending.wrapped, 8, this.sendBase);
+        this.endpoint.send(pending.wrapped, pending.wrapped.length);
+    }
+
+    private void settle(int seq, long now) {
+        int slot = seq & ReliableChannel.windowMask;
+        Pending pending = this.window[slot];
+        if (pending == null || pending.seq != seq)
+            return;
+        if (pending.attempts == 1)
+            this.sample(now - pending.sentNanos);
+        this.window[slot] = null;
+    }
+
+    private void sample(long rttNanos) {
+        if (this.srttNanos == 0) {
+            this.srttNanos = rttNanos;
+            this.rttvarNanos = rttNanos / 2;
+        } else {
+            this.rttvarNanos += (Math.abs(this.srttNanos - rttNanos) - this.rttvarNanos) / 4;
+            this.srttNanos += (rttNanos - this.srttNanos) / 8;
+        }
+        long rto = this.srttNanos + Math.max(ReliableChannel.clockNanos, 4 * this.rttvarNanos);
+        this.rtoNanos = Math.max(ReliableChannel.minRtoNanos, Math.min(rto, ReliableChannel.maxRtoNanos));
+        this.rtt.record(rttNanos);
+    }
+
+    private void advance(long now) throws IOException {
+        while (this.sendBase != this.sendNext && this.window[this.sendBase & ReliableChannel.windowMask] == null)
+            this.sendBase++;
+        while (!this.backlog.isEmpty() && this.sendNext - this.sendBase < ReliableChannel.windowSize)
+            this.transmit(this.backlog.poll(), now);
+    }
+
+    private static class Pending {
+        private final int seq;
+        private final byte[] wrapped;
+        private long sentNanos;
+        private long deadlineNanos;
+        private int attempts;
+
+        private Pending(int seq, byte[] wrapped, long sentNanos, long deadlineNanos) {
+            this.seq = seq;
+            this.wrapped = wrapped;
+            this.sentNanos = sentNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.attempts = 1;
+        }
+    }
+
+    private static final int windowSize = 64;
+    private static final int windowMask = ReliableChannel.windowSize - 1;
+    private static final int maxBacklog = 1024;
+    private static final int maxAttempts = 8;
+    private static final long initialRtoNanos = 200_000_000L;
+    private static final long minRtoNanos = 20_000_000L;
+    private static final long maxRtoNanos = 2_000_000_000L;
+    private static final long clockNanos = UDPMultiplexer.RETRANSMIT_TICK_MILLIS * 1_000_000L;
+}
@@ -0,0 +1,213 @@
+package com.szymm.chat.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class TCPChannel {
+    public final SocketChannel channel;
+    public final TCPEndpoint endpoint;
+    private final ArrayDeque<ByteBuffer> outQueue;
+    private final AtomicBoolean writePending;
+    private final Consumer<TCPChannel> onWritePending;
+    private final ByteBuffer[] gather;
+    private final AtomicLong writeCalls;
+    private final AtomicLong buffersWritten;
+    private final int maxMessageSize;
+    private ByteBuffer inBuffer;
+
+    public TCPChannel(SocketChannel channel, int maxMessageSize, Consumer<TCPChannel> onWritePending)
+            throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        this.channel = channel;
+        this.outQueue = new ArrayDeque<>();
+        this.writePending = new AtomicBoolean(false);
+        this.onWritePending = onWritePending;
+        this.gather = new ByteBuffer[TCPChannel.maxGather];
+        this.writeCalls = new AtomicLong();
+        this.buffersWritten = new AtomicLong();
+        this.maxMessageSize = maxMessageSize;
+        this.inBuffer = ByteBuffer.allocate(TCPChannel.initialCapacity)
+                .order(TCPChannel.byteOrder);
+        OutputStream outStream = new ChannelOutputStream();
+        this.endpoint = new TCPEndpoint(channel.socket(), InputStream.nullInputStream(), outStream);
+        this.endpoint.setMaxMessageSize(maxMessageSize);
+        this.endpoint.bindChannel(this);
+    }
+
+    public boolean read(Consumer<byte[]> onMessage) throws IOException {
+        int count = this.channel.read(this.inBuffer);
+        if (count < 0)
+            return false;
+        this.inBuffer.flip();
+        while (this.inBuffer.remaining() >= 4) {
+            int size = this.inBuffer.getInt(this.inBuffer.position());
+            if (size < 0 || size > this.maxMessageSize)
+                throw new IOException("bad message size: " + size);
+            if (this.inBuffer.remaining() < size + 4)
+                break;
+            byte[] messageBytes = new byte[size];
+            this.inBuffer.position(this.inBuffer.position() + 4);
+            this.inBuffer.get(messageBytes);
+            this.endpoint.countIn(size + 4);
+            onMessage.accept(messageBytes);
+        }
+        this.inBuffer.compact();
+        this.ensureCapacity();
+        return true;
+    }
+
+    public boolean flush() throws IOException {
+        this.writePending.set(false);
+        synchronized (this.outQueue) {
+            while (true) {
+                int count = 0;
+                for (ByteBuffer buffer : this.outQueue) {
+                    if (count == this.gather.length)
+                        break;
+                    this.gather[count++] = buffer;
+                }
+                if (count == 0) {
+                    this.outQueue.notifyAll();
+                    return true;
+                }
+                this.channel.write(this.gather, 0, count);
+                this.writeCalls.incrementAndGet();
+                int written = 0;
+                while (written < count && !this.gather[written].hasRemaining()) {
+                    this.outQueue.poll();
+                    written++;
+                }
+                this.buffersWritten.addAndGet(written);
+                Arrays.fill(this.gather, 0, count, null);
+                if (written < count)
+                    return false;
+            }
+        }
+    }
+
+    public boolean offer(byte[] bytes, int capacity) {
+        synchronized (this.outQueue) {
+            if (this.outQueue.size() >= capacity || !this.channel.isOpen())
+                return false;
+            this.outQueue.add(ByteBuffer.wrap(bytes));
+        }
+        this.requestWrite();
+        return true;
+    }
+
+    public boolean dropOldest() {
+        synchronized (this.outQueue) {
+            ByteBuffer head = this.outQueue.peek();
+            if (head == null)
+                return false;
+            if (head.position() == 0) {
+                this.outQueue.poll();
+                return true;
+            }
+            if (this.outQueue.size() < 2)
+                return false;
+            this.outQueue.poll();
+            this.outQueue.poll();
+            this.outQueue.addFirst(head);
+            return true;
+        }
+    }
+
+    public int getPending() {
+        synchronized (this.outQueue) {
+            return this.outQueue.size();
+        }
+    }
+
+    public boolean awaitFlushed(long deadlineNanos) {
+        synchronized (this.outQueue) {
+            try {
+                while (!this.outQueue.isEmpty() && this.channel.isOpen()) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0)
+                        return false;
+                    TimeUnit.NANOSECONDS.timedWait(this.outQueue, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    public long getWriteCalls() {
+        return this.writeCalls.get();
+    }
+
+    public long getBuffersWritten() {
+        return this.buffersWritten.get();
+    }
+
+    public void close() {
+        this.endpoint.close();
+    }
+
+    private void enqueue(ByteBuffer buffer) throws IOException {
+        synchronized (this.outQueue) {
+            if (!this.channel.isOpen())
+                throw new IOException("channel closed");
+            if (this.outQueue.size() >= TCPChannel.maxPendingWrites)
+                throw new IOException("channel write queue full");
+            this.outQueue.add(buffer);
+        }
+        this.requestWrite();
+    }
+
+    private void requestWrite() {
+        if (this.writePending.compareAndSet(false, true))
+            this.onWritePending.accept(this);
+    }
+
+    private void ensureCapacity() {
+        int needed = TCPChannel.initialCapacity;
+        if (this.inBuffer.position() >= 4)
+            needed = Math.max(needed, this.inBuffer.getInt(0) + 4);
+        int capacity = this.inBuffer.capacity();
+        if (needed > capacity || (capacity > TCPChannel.initialCapacity && needed == TCPChannel.initialCapacity)) {
+            ByteBuffer resized = ByteBuffer.allocate(needed)
+                    .order(TCPChannel.byteOrder);
+            this.inBuffer.flip();
+            resized.put(this.inBuffer);
+            this.inBuffer = resized;
+        }
+    }
+
+    class ChannelOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            byte[] copy = Arrays.copyOfRange(bytes, offset, offset + length);
+            TCPChannel.this.enqueue(ByteBuffer.wrap(copy));
+        }
+
+        void writeShared(byte[] bytes) throws IOException {
+            TCPChannel.this.enqueue(ByteBuffer.wrap(bytes));
+        }
+    }
+
+    private static final int initialCapacity = 1024;
+    private static final int maxPendingWrites = 64;
+    private static final int maxGather = 16;
+    private static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+}
@@ -1,24 +1,51 @@
 package com.szymm.chat.net;
 
-import java.io.ByteArrayOutputStream;
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.metrics.Metrics;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Optional;
 
 public class TCPEndpoint implements Endpoint {
     public final Socket socket;
     private final Address address;
     private final OutputStream outStream;
     private final InputStream inStream;
-    private final ByteArrayOutputStream bufferStream;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private ByteBuffer buffer;
+    private volatile WireFormat format;
+    private volatile long lastActiveNanos;
+    private volatile int maxMessageSize;
+    private Counter totalIn;
+    private Counter totalOut;
+    private TCPChannel channel;
 
-    public TCPEndpoint(Socket remoteSocket) throws IOException {
+    public TCPEndpoint(Socket remoteSocket, InputStream inStream, OutputStream outStream) {
         this.socket = remoteSocket;
         this.address = Address.of(remoteSocket);
-        this.outStream = remoteSocket.getOutputStream();
-        this.inStream = remoteSocket.getInputStream();
-        this.bufferStream = new ByteArrayOutputStream(960);
+        this.outStream = outStream;
+        this.inStream = inStream;
+        this.bytesIn = new Counter();
+        this.bytesOut = new Counter();
+        this.buffer = null;
+        this.format = WireFormat.TEXT;
+        this.lastActiveNanos = System.nanoTime();
+        this.maxMessageSize = Integer.MAX_VALUE - 4;
+        this.setMetrics(Metrics.DEFAULT);
+        this.channel = null;
+    }
+
+    public TCPEndpoint(Socket remoteSocket) throws IOException {
+        this(remoteSocket, remoteSocket.getInputStream(), remoteSocket.getOutputStream());
+        remoteSocket.setTcpNoDelay(true);
     }
 
     public TCPEndpoint(Address address) throws IOException {
@@ -27,26 +54,101 @@ public class TCPEndpoint implements Endpoint {
 
     @Override
     public byte[] read(int size) throws IOException {
-        return this.inStream.readNBytes(size);
+        byte[] bytes = this.inStream.readNBytes(size);
+        this.countIn(bytes.length);
+        if (bytes.length < size)
+            throw new EOFException("endpoint closed");
+        return bytes;
+    }
+
+    @Override
+    public void put(byte[] bytes) {
+        this.buffer = BufferPool.TCP.ensure(this.buffer, bytes.length);
+        this.buffer.put(bytes);
     }
 
     @Override
-    public void put(byte[] bytes) throws IOException {
-        this.bufferStream.write(bytes);
+    public void putInt(int value) {
+        this.buffer = BufferPool.TCP.ensure(this.buffer, 4);
+        this.buffer.putInt(value);
     }
 
     @Override
     public void reset() {
-        this.bufferStream.reset();
+        if (this.buffer != null)
+            BufferPool.TCP.release(this.buffer);
+        this.buffer = null;
     }
 
     @Override
     public void send() throws IOException {
-        byte[] bytes = this.bufferStream.toByteArray();
-        this.outStream.write(bytes);
+        if (this.buffer == null)
+            return;
+        this.send(this.buffer);
         this.reset();
     }
 
+    public void send(ByteBuffer buffer) throws IOException {
+        this.outStream.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        this.countOut(buffer.position());
+    }
+
+    public WireFormat getFormat() {
+        return this.format;
+    }
+
+    public void setFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    public Optional<TCPChannel> getChannel() {
+        return Optional.ofNullable(this.channel);
+    }
+
+    void bindChannel(TCPChannel channel) {
+        this.channel = channel;
+    }
+
+    public int getMaxMessageSize() {
+        return this.maxMessageSize;
+    }
+
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.totalIn = metrics.counter("tcp.bytes.in");
+        this.totalOut = metrics.counter("tcp.bytes.out");
+    }
+
+    public void send(byte[] bytes) throws IOException {
+        if (this.outStream instanceof TCPChannel.ChannelOutputStream channelStream)
+            channelStream.writeShared(bytes);
+        else
+            this.outStream.write(bytes);
+        this.countOut(bytes.length);
+    }
+
+    public void send(List<byte[]> batch) throws IOException {
+        SocketChannel channel = this.socket.getChannel();
+        if (channel == null || !channel.isBlocking()) {
+            for (byte[] bytes : batch)
+                this.send(bytes);
+            return;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i));
+            remaining += buffers[i].remaining();
+        }
+        long total = remaining;
+        while (remaining > 0)
+            remaining -= channel.write(buffers);
+        this.countOut(total);
+    }
+
     @Override
     public boolean isUp() {
         return !this.socket.isClosed();
@@ -57,6 +159,40 @@ public class TCPEndpoint implements Endpoint {
         return this.address;
     }
 
+    @Override
+    public long getBytesIn() {
+        return this.bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.bytesOut.get();
+    }
+
+    @Override
+    public long getLastActiveNanos() {
+        return this.lastActiveNanos;
+    }
+
+    void countIn(long count) {
+        this.lastActiveNanos = System.nanoTime();
+        this.bytesIn.add(count);
+        this.totalIn.add(count);
+    }
+
+    private void countOut(long count) {
+        this.bytesOut.add(count);
+        this.totalOut.add(count);
+    }
+
+    public void shutdownInput() {
+        try {
+            this.socket.shutdownInput();
+        } catch (IOException e) {
+            this.close();
+        }
+    }
+
     @Override
     public void close() {
         try {
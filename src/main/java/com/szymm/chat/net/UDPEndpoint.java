@@ -1,20 +1,39 @@
 package com.szymm.chat.net;
 
-import java.io.ByteArrayOutputStream;
+import com.szymm.chat.metrics.Counter;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class UDPEndpoint implements Endpoint {
     public final UDPMultiplexer multiplexer;
     private final Address address;
     private final InputStream inStream;
-    private final ByteArrayOutputStream bufferStream;
+    private final FrameAssembler assembler;
+    private final ReliableChannel reliableChannel;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final Counter totalIn;
+    private final Counter totalOut;
+    private ByteBuffer buffer;
+    private volatile Object attachment;
+    private volatile long lastActiveNanos;
 
     public UDPEndpoint(UDPMultiplexer multiplexer, Address address) throws IOException {
         this.multiplexer = multiplexer;
         this.address = address;
+        this.assembler = new FrameAssembler();
+        this.reliableChannel = new ReliableChannel(this);
+        this.bytesIn = new Counter();
+        this.bytesOut = new Counter();
+        this.totalIn = multiplexer.getMetrics().counter("udp.bytes.in");
+        this.totalOut = multiplexer.getMetrics().counter("udp.bytes.out");
         this.inStream = multiplexer.attach(this);
-        this.bufferStream = new ByteArrayOutputStream(4032);
+        this.buffer = null;
+        this.attachment = null;
+        this.lastActiveNanos = System.nanoTime();
     }
 
     public UDPEndpoint(Address address) throws IOException {
@@ -23,26 +42,73 @@ public class UDPEndpoint implements Endpoint {
 
     @Override
     public byte[] read(int size) throws IOException {
-        return this.inStream.readNBytes(size);
+        byte[] bytes = this.inStream.readNBytes(size);
+        if (bytes.length < size)
+            throw new EOFException("endpoint detached");
+        return bytes;
+    }
+
+    @Override
+    public void put(byte[] bytes) {
+        this.buffer = BufferPool.UDP.ensure(this.buffer, bytes.length);
+        this.buffer.put(bytes);
     }
 
     @Override
-    public void put(byte[] bytes) throws IOException {
-        this.bufferStream.write(bytes);
+    public void putInt(int value) {
+        this.buffer = BufferPool.UDP.ensure(this.buffer, 4);
+        this.buffer.putInt(value);
     }
 
     @Override
     public void reset() {
-        this.bufferStream.reset();
+        if (this.buffer != null)
+            BufferPool.UDP.release(this.buffer);
+        this.buffer = null;
     }
 
     @Override
     public void send() throws IOException {
-        byte[] bytes = this.bufferStream.toByteArray();
-        this.multiplexer.send(bytes, this.address);
+        if (this.buffer == null)
+            return;
+        this.send(this.buffer);
         this.reset();
     }
 
+    public void send(ByteBuffer buffer) throws IOException {
+        this.send(buffer.array(), buffer.position());
+    }
+
+    public void send(byte[] datagram, int length) throws IOException {
+        this.multiplexer.send(datagram, length, this.address);
+        this.bytesOut.add(length);
+        this.totalOut.add(length);
+    }
+
+    public void sendReliable(ByteBuffer buffer) throws IOException {
+        this.reliableChannel.send(buffer.array(), buffer.position());
+    }
+
+    public void sendReliable(byte[] datagram, int length) throws IOException {
+        this.reliableChannel.send(datagram, length);
+    }
+
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public Object attachment() {
+        return this.attachment;
+    }
+
+    public FrameAssembler getAssembler() {
+        return this.assembler;
+    }
+
+    public ReliableChannel getReliableChannel() {
+        return this.reliableChannel;
+    }
+
     @Override
     public boolean isUp() {
         return !this.multiplexer.isClosed() && this.multiplexer.isAttached(this);
@@ -53,6 +119,27 @@ public class UDPEndpoint implements Endpoint {
         return this.address;
     }
 
+    @Override
+    public long getBytesIn() {
+        return this.bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.bytesOut.get();
+    }
+
+    @Override
+    public long getLastActiveNanos() {
+        return this.lastActiveNanos;
+    }
+
+    void countIn(long count) {
+        this.lastActiveNanos = System.nanoTime();
+        this.bytesIn.add(count);
+        this.totalIn.add(count);
+    }
+
     @Override
     public void close() {
         try {
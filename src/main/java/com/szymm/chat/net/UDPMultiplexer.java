@@ -1,50 +1,98 @@
 package com.szymm.chat.net;
 
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.metrics.Metrics;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class UDPMultiplexer {
     private final DatagramSocket socket;
-    private final Map<Address, OutputStream> outStreams;
+    private final Map<Address, UDPEndpoint> endpoints;
+    private final Map<Address, FrameQueue> queues;
     private final int maxSize;
     private final byte[] buffer;
+    private final DatagramPacket receivePacket;
+    private final ThreadLocal<DatagramPacket> sendPacket;
+    private final Set<ReliableChannel> watched;
+    private final Metrics metrics;
+    private final Counter datagramsReceived;
+    private final Counter datagramsDropped;
+    private Dispatcher dispatcher;
+    private Admission admission;
+    private ScheduledExecutorService retransmitter;
 
-    public UDPMultiplexer(DatagramSocket remoteSocket, int maxSize) {
+    public UDPMultiplexer(DatagramSocket remoteSocket, int maxSize, Metrics metrics) {
         this.socket = remoteSocket;
-        this.outStreams = new HashMap<>();
+        this.endpoints = new ConcurrentHashMap<>();
+        this.queues = new ConcurrentHashMap<>();
         this.maxSize = maxSize;
         this.buffer = new byte[maxSize];
+        this.receivePacket = new DatagramPacket(this.buffer, maxSize);
+        this.sendPacket = ThreadLocal.withInitial(() -> new DatagramPacket(new byte[0], 0));
+        this.watched = ConcurrentHashMap.newKeySet();
+        this.metrics = metrics;
+        this.datagramsReceived = metrics.counter("udp.datagrams.received");
+        this.datagramsDropped = metrics.counter("udp.datagrams.dropped");
+        this.dispatcher = null;
+        this.admission = null;
+        this.retransmitter = null;
+    }
+
+    public UDPMultiplexer(DatagramSocket remoteSocket, int maxSize) {
+        this(remoteSocket, maxSize, Metrics.DEFAULT);
     }
 
     public UDPMultiplexer(int maxSize) throws IOException {
         this(new DatagramSocket(), maxSize);
     }
 
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    public void setDispatcher(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public void setAdmission(Admission admission) {
+        this.admission = admission;
+    }
+
+    public boolean isInline() {
+        return this.dispatcher != null;
+    }
+
     public InputStream attach(UDPEndpoint endpoint) throws IOException {
-        PipedInputStream inStream = new PipedInputStream();
-        PipedOutputStream outStream = new PipedOutputStream(inStream);
         Address address = endpoint.getRemoteAddress();
-        this.outStreams.put(address, outStream);
-        return inStream;
+        this.endpoints.put(address, endpoint);
+        if (this.isInline())
+            return InputStream.nullInputStream();
+        FrameQueue queue = new FrameQueue(UDPMultiplexer.maxQueuedBytes);
+        this.queues.put(address, queue);
+        return queue.inStream;
     }
 
     public void detach(UDPEndpoint endpoint) throws IOException {
         Address address = endpoint.getRemoteAddress();
-        OutputStream outStream = this.outStreams.remove(address);
-        outStream.close();
+        this.endpoints.remove(address);
+        FrameQueue queue = this.queues.remove(address);
+        if (queue != null)
+            queue.close();
     }
 
     public boolean isAttached(UDPEndpoint endpoint) {
         Address address = endpoint.getRemoteAddress();
-        return this.outStreams.containsKey(address);
+        return this.endpoints.get(address) == endpoint;
     }
 
     public Address getLocalAddress() {
@@ -52,24 +100,131 @@ public class UDPMultiplexer {
     }
 
     public Address read() throws IOException {
-        DatagramPacket packet = new DatagramPacket(this.buffer, this.maxSize);
+        DatagramPacket packet = this.receivePacket;
+        packet.setData(this.buffer, 0, this.maxSize);
         this.socket.receive(packet);
+        this.datagramsReceived.increment();
         Address address = Address.from(packet);
-        OutputStream outStream = this.outStreams.get(address);
-        byte[] fragment = Arrays.copyOf(this.buffer, packet.getLength());
-        if (outStream != null) {
-            outStream.write(fragment);
-            outStream.flush();
+        UDPEndpoint endpoint = this.endpoints.get(address);
+        if (endpoint == null) {
+            this.datagramsDropped.increment();
+            return address;
+        }
+        int length = packet.getLength();
+        endpoint.countIn(length);
+        if (Frame.isAck(this.buffer, length)) {
+            endpoint.getReliableChannel().acknowledge(this.buffer);
+            return address;
+        }
+        boolean isReliable = Frame.isReliable(this.buffer, length);
+        FrameQueue queue = this.queues.get(address);
+        if (isReliable) {
+            int seq = Frame.intAt(this.buffer, 4);
+            int floor = Frame.intAt(this.buffer, 8);
+            int payloadLength = length - Frame.RELIABLE_HEADER;
+            System.arraycopy(this.buffer, Frame.RELIABLE_HEADER, this.buffer, 0, payloadLength);
+            length = payloadLength;
+            if (!endpoint.getReliableChannel().receive(seq, floor, () -> this.admit(endpoint, queue, payloadLength)))
+                return address;
+        } else if (this.admission != null && !this.admission.admit(endpoint, this.buffer, length)) {
+            return address;
         }
+        if (this.isInline()) {
+            this.dispatcher.dispatch(endpoint, this.buffer, length, isReliable);
+            return address;
+        }
+        byte[] frameBytes;
+        if (Frame.isFragment(this.buffer, length)) {
+            frameBytes = endpoint.getAssembler().accept(this.buffer, length);
+            if (frameBytes == null)
+                return address;
+        } else {
+            int size = Frame.sizeOf(this.buffer, length);
+            if (size < 0) {
+                this.datagramsDropped.increment();
+                return address;
+            }
+            frameBytes = Arrays.copyOf(this.buffer, size + 4);
+        }
+        if (isReliable)
+            frameBytes[3] |= (byte) (Frame.RELIABLE_FLAG >>> 24);
+        if (queue == null || !queue.offer(frameBytes, isReliable))
+            this.datagramsDropped.increment();
         return address;
     }
 
     public void send(byte[] bytes, Address address) throws IOException {
-        DatagramPacket packet = new DatagramPacket(bytes, bytes.length, address.inet, address.port);
+        this.send(bytes, bytes.length, address);
+    }
+
+    public void send(byte[] bytes, int length, Address address) throws IOException {
+        DatagramPacket packet = this.sendPacket.get();
+        packet.setData(bytes, 0, length);
+        packet.setAddress(address.inet);
+        packet.setPort(address.port);
         this.socket.send(packet);
     }
 
+    synchronized void watch(ReliableChannel channel) {
+        this.watched.add(channel);
+        if (this.retransmitter != null)
+            return;
+        this.retransmitter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "udp-retransmit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retransmitter.scheduleWithFixedDelay(this::retransmit,
+                UDPMultiplexer.RETRANSMIT_TICK_MILLIS, UDPMultiplexer.RETRANSMIT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void unwatch(ReliableChannel channel) {
+        this.watched.remove(channel);
+    }
+
+    private void retransmit() {
+        long now = System.nanoTime();
+        for (ReliableChannel channel : this.watched) {
+            try {
+                channel.retransmit(now);
+            } catch (IOException e) {
+                if (this.isClosed())
+                    return;
+            }
+        }
+    }
+
+    private boolean admit(UDPEndpoint endpoint, FrameQueue queue, int length) {
+        if (queue != null && !queue.hasRoom(length)) {
+            this.datagramsDropped.increment();
+            return false;
+        }
+        return this.admission == null || this.admission.admit(endpoint, this.buffer, length);
+    }
+
     public boolean isClosed() {
         return this.socket.isClosed();
     }
+
+    public synchronized void close() {
+        this.socket.close();
+        if (this.retransmitter != null)
+            this.retransmitter.shutdownNow();
+    }
+
+    public interface Dispatcher {
+        void dispatch(UDPEndpoint endpoint, byte[] datagram, int length) throws IOException;
+
+        default void dispatch(UDPEndpoint endpoint, byte[] datagram, int length, boolean reliable) throws IOException {
+            this.dispatch(endpoint, datagram, length);
+        }
+    }
+
+    public interface Admission {
+        boolean admit(UDPEndpoint endpoint, byte[] datagram, int length);
+    }
+
+    private static final int maxQueuedBytes = 1 << 20;
+
+    static final long RETRANSMIT_TICK_MILLIS = 10;
 }
@@ -0,0 +1,6 @@
+package com.szymm.chat.net;
+
+public enum WireFormat {
+    TEXT,
+    BINARY
+}
@@ -0,0 +1,60 @@
+package com.szymm.chat.user;
+
+import com.szymm.chat.log.Log;
+import com.szymm.chat.metrics.Counter;
+import com.szymm.chat.metrics.Metrics;
+import com.szymm.chat.misc.TimerWheel;
+import com.szymm.chat.net.TCPEndpoint;
+import com.szymm.chat.net.UDPEndpoint;
+
+public class IdleReaper implements Runnable {
+    private final UserStore userStore;
+    private final long idleNanos;
+    private final TimerWheel wheel;
+    private final Counter evicted;
+
+    public IdleReaper(UserStore userStore, long idleMillis, Metrics metrics) {
+        if (idleMillis <= 0)
+            throw new IllegalArgumentException("idle timeout must be positive");
+        this.userStore = userStore;
+        this.idleNanos = idleMillis * 1_000_000L;
+        this.wheel = new TimerWheel(IdleReaper.slotCount, IdleReaper.tickMillis);
+        this.evicted = metrics.counter("users.evicted");
+    }
+
+    public void watch(User user) {
+        this.wheel.schedule(() -> this.check(user), this.idleNanos);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(this.wheel.getTickMillis());
+                this.wheel.advance(System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void check(User user) {
+        if (!this.userStore.contains(user))
+            return;
+        long idle = System.nanoTime() - user.getLastActiveNanos();
+        if (idle < this.idleNanos) {
+            this.wheel.schedule(() -> this.check(user), this.idleNanos - idle);
+            return;
+        }
+        if (!this.userStore.remove(user))
+            return;
+        Log.info(() -> "evict idle user: " + user.name);
+        this.evicted.increment();
+        user.getUDP().ifPresent(UDPEndpoint::close);
+        user.getOutbound().ifPresent(OutboundQueue::close);
+        user.getTCP().ifPresent(TCPEndpoint::shutdownInput);
+    }
+
+    private static final int slotCount = 512;
+    private static final long tickMillis = 100;
+}
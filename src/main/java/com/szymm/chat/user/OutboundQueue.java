@@ -0,0 +1,251 @@
+package com.szymm.chat.user;
+
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.TCPChannel;
+import com.szymm.chat.net.TCPEndpoint;
+import com.szymm.chat.log.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OutboundQueue {
+    private final TCPEndpoint endpoint;
+    private final TCPChannel channel;
+    private final Executor executor;
+    private final int capacity;
+    private final BlockingQueue<byte[]> queue;
+    private final Overflow overflow;
+    private final long timeoutMillis;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final List<byte[]> batch;
+    private final AtomicBoolean isDraining;
+    private final AtomicLong sentCount;
+    private final AtomicLong droppedCount;
+    private final AtomicInteger highWater;
+    private final AtomicLong batchCount;
+    private final AtomicInteger maxBatchSeen;
+    private volatile boolean isClosed;
+    private int lastBatchSize;
+
+    public OutboundQueue(TCPEndpoint endpoint, Executor executor, int capacity, Overflow overflow, long timeoutMillis,
+                         int maxBatch, long lingerMicros) {
+        this.endpoint = endpoint;
+        this.channel = endpoint.getChannel().orElse(null);
+        this.executor = executor;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflow = overflow;
+        this.timeoutMillis = timeoutMillis;
+        this.maxBatch = maxBatch;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.batch = new ArrayList<>(maxBatch);
+        this.isDraining = new AtomicBoolean(false);
+        this.sentCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.highWater = new AtomicInteger();
+        this.batchCount = new AtomicLong();
+        this.maxBatchSeen = new AtomicInteger();
+        this.isClosed = false;
+        this.lastBatchSize = 0;
+    }
+
+    public OutboundQueue(TCPEndpoint endpoint, Executor executor, int capacity, Overflow overflow, long timeoutMillis) {
+        this(endpoint, executor, capacity, overflow, timeoutMillis, 1, 0);
+    }
+
+    public boolean offer(Message message) {
+        return this.offer(message.encode(this.endpoint.getFormat()));
+    }
+
+    public boolean offer(byte[] bytes) {
+        if (this.isClosed)
+            return false;
+        if (this.channel != null)
+            return this.offerToChannel(bytes);
+        boolean isQueued = switch (this.overflow) {
+            case DROP_OLDEST -> this.offerDropOldest(bytes);
+            case DISCONNECT -> this.offerOrDisconnect(bytes);
+            case BLOCK -> this.offerBlocking(bytes);
+        };
+        if (isQueued) {
+            this.highWater.accumulateAndGet(this.queue.size(), Math::max);
+            this.schedule();
+        }
+        return isQueued;
+    }
+
+    public int getDepth() {
+        return this.channel != null ? this.channel.getPending() : this.queue.size();
+    }
+
+    public int getHighWater() {
+        return this.highWater.get();
+    }
+
+    public long getSentCount() {
+        return this.sentCount.get();
+    }
+
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    public long getBatchCount() {
+        return this.batchCount.get();
+    }
+
+    public int getMaxBatchSeen() {
+        return this.maxBatchSeen.get();
+    }
+
+    public boolean isClosed() {
+        return this.isClosed;
+    }
+
+    public boolean awaitDrained(long deadlineNanos) {
+        if (this.channel != null)
+            return this.isClosed || this.channel.awaitFlushed(deadlineNanos);
+        synchronized (this.isDraining) {
+            try {
+                while (!this.isClosed && (this.isDraining.get() || !this.queue.isEmpty())) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0)
+                        return false;
+                    TimeUnit.NANOSECONDS.timedWait(this.isDraining, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void close() {
+        this.isClosed = true;
+        this.droppedCount.addAndGet(this.queue.size());
+        this.queue.clear();
+    }
+
+    private boolean offerToChannel(byte[] bytes) {
+        boolean isQueued = this.channel.offer(bytes, this.capacity);
+        if (!isQueued && this.overflow == Overflow.DROP_OLDEST && this.channel.dropOldest()) {
+            this.droppedCount.incrementAndGet();
+            isQueued = this.channel.offer(bytes, this.capacity);
+        }
+        if (isQueued) {
+            this.sentCount.incrementAndGet();
+            this.highWater.accumulateAndGet(this.channel.getPending(), Math::max);
+            return true;
+        }
+        this.droppedCount.incrementAndGet();
+        if (this.overflow == Overflow.DISCONNECT)
+            this.disconnect();
+        return false;
+    }
+
+    private boolean offerDropOldest(byte[] bytes) {
+        while (!this.queue.offer(bytes)) {
+            if (this.queue.poll() != null)
+                this.droppedCount.incrementAndGet();
+        }
+        return true;
+    }
+
+    private boolean offerOrDisconnect(byte[] bytes) {
+        if (this.queue.offer(bytes))
+            return true;
+        this.droppedCount.incrementAndGet();
+        this.disconnect();
+        return false;
+    }
+
+    private void disconnect() {
+        Log.warn(() -> "outbound queue full, disconnect -> " + this.endpoint.getRemoteAddress());
+        this.close();
+        if (this.channel != null)
+            this.endpoint.shutdownInput();
+        else
+            this.endpoint.close();
+    }
+
+    private boolean offerBlocking(byte[] bytes) {
+        try {
+            if (this.queue.offer(bytes, this.timeoutMillis, TimeUnit.MILLISECONDS))
+                return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.droppedCount.incrementAndGet();
+        return false;
+    }
+
+    private void schedule() {
+        if (this.isDraining.compareAndSet(false, true))
+            this.executor.execute(this::drain);
+    }
+
+    private void drain() {
+        try {
+            while (!this.isClosed) {
+                this.batch.clear();
+                this.queue.drainTo(this.batch, this.maxBatch);
+                if (this.batch.isEmpty())
+                    break;
+                if (this.lastBatchSize > 1)
+                    this.linger();
+                this.lastBatchSize = this.batch.size();
+                if (this.batch.size() == 1)
+                    this.endpoint.send(this.batch.get(0));
+                else
+                    this.endpoint.send(this.batch);
+                this.sentCount.addAndGet(this.batch.size());
+                this.batchCount.incrementAndGet();
+                this.maxBatchSeen.accumulateAndGet(this.batch.size(), Math::max);
+            }
+            this.batch.clear();
+        } catch (IOException e) {
+            Log.warn("outbound IO exception: " + e);
+            this.close();
+        } finally {
+            this.isDraining.set(false);
+            synchronized (this.isDraining) {
+                this.isDraining.notifyAll();
+            }
+        }
+        if (!this.isClosed && !this.queue.isEmpty())
+            this.schedule();
+    }
+
+    private void linger() {
+        long deadline = System.nanoTime() + this.lingerNanos;
+        try {
+            while (this.batch.size() < this.maxBatch) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return;
+                byte[] bytes = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (bytes == null)
+                    return;
+                this.batch.add(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public enum Overflow {
+        DROP_OLDEST,
+        DISCONNECT,
+        BLOCK
+    }
+}
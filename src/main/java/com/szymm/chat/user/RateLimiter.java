@@ -0,0 +1,53 @@
+package com.szymm.chat.user;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RateLimiter {
+    private final TokenBucket messages;
+    private final TokenBucket frames;
+    private final TokenBucket bytes;
+    private final AtomicLong nextNoticeNanos;
+
+    public RateLimiter(int messagesPerSecond, int framesPerSecond, long bytesPerSecond, double burstSeconds) {
+        this.messages = RateLimiter.bucketOf(messagesPerSecond, burstSeconds);
+        this.frames = RateLimiter.bucketOf(framesPerSecond, burstSeconds);
+        this.bytes = RateLimiter.bucketOf(bytesPerSecond, burstSeconds);
+        this.nextNoticeNanos = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean allowMessage(int size) {
+        return this.allow(this.messages, size);
+    }
+
+    public boolean allowFrame(int size) {
+        return this.allow(this.frames, size);
+    }
+
+    public boolean allowBytes(int size) {
+        return this.bytes == null || this.bytes.tryAcquire(size);
+    }
+
+    private boolean allow(TokenBucket events, int size) {
+        if (events != null && !events.tryAcquire(1))
+            return false;
+        if (this.allowBytes(size))
+            return true;
+        if (events != null)
+            events.release(1);
+        return false;
+    }
+
+    public boolean shouldNotify() {
+        long now = System.nanoTime();
+        long next = this.nextNoticeNanos.get();
+        return now - next >= 0 && this.nextNoticeNanos.compareAndSet(next, now + RateLimiter.noticeNanos);
+    }
+
+    private static TokenBucket bucketOf(double perSecond, double burstSeconds) {
+        return perSecond > 0 ? new TokenBucket(perSecond, burstSeconds) : null;
+    }
+
+    private static final long noticeNanos = 1_000_000_000L;
+
+    public static final RateLimiter UNLIMITED = new RateLimiter(0, 0, 0, 1);
+}
@@ -0,0 +1,72 @@
+package com.szymm.chat.user;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RoomIndex {
+    private final Map<String, Roster> rooms;
+
+    public RoomIndex() {
+        this.rooms = new ConcurrentHashMap<>();
+    }
+
+    public Roster members(String room) {
+        return this.rooms.getOrDefault(room, Roster.EMPTY);
+    }
+
+    public Roster lobby() {
+        return this.members(RoomIndex.LOBBY);
+    }
+
+    public Roster audience(User user) {
+        return this.members(RoomIndex.keyOf(user));
+    }
+
+    public int roomCount() {
+        return this.rooms.containsKey(RoomIndex.LOBBY) ? this.rooms.size() - 1 : this.rooms.size();
+    }
+
+    void join(User user, String room) {
+        if (!UserStore.isValidName(room))
+            throw new IllegalArgumentException("illegal room name");
+        if (room.equals(RoomIndex.keyOf(user)))
+            return;
+        this.drop(user, RoomIndex.keyOf(user));
+        this.put(user, room);
+        user.bindRoom(room);
+    }
+
+    void leave(User user) {
+        if (user.getRoom().isEmpty())
+            return;
+        this.drop(user, RoomIndex.keyOf(user));
+        this.put(user, RoomIndex.LOBBY);
+        user.bindRoom(null);
+    }
+
+    void enter(User user) {
+        this.put(user, RoomIndex.LOBBY);
+    }
+
+    void remove(User user) {
+        this.drop(user, RoomIndex.keyOf(user));
+        user.bindRoom(null);
+    }
+
+    private void put(User user, String room) {
+        this.rooms.compute(room, (name, members) -> (members == null ? Roster.EMPTY : members).with(user));
+    }
+
+    private void drop(User user, String room) {
+        this.rooms.computeIfPresent(room, (name, members) -> {
+            Roster remaining = members.without(user.getId());
+            return remaining.size() == 0 ? null : remaining;
+        });
+    }
+
+    public static String keyOf(User user) {
+        return user.getRoom().orElse(RoomIndex.LOBBY);
+    }
+
+    private static final String LOBBY = "";
+}
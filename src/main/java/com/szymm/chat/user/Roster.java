@@ -0,0 +1,70 @@
+package com.szymm.chat.user;
+
+import java.util.Arrays;
+
+public class Roster {
+    private final int[] ids;
+    private final User[] users;
+
+    Roster(int[] ids, User[] users) {
+        this.ids = ids;
+        this.users = users;
+    }
+
+    public int size() {
+        return this.ids.length;
+    }
+
+    public int idAt(int index) {
+        return this.ids[index];
+    }
+
+    public User get(int index) {
+        return this.users[index];
+    }
+
+    public User byId(int id) {
+        int index = Arrays.binarySearch(this.ids, id);
+        return index >= 0 ? this.users[index] : null;
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(this.ids, id) >= 0;
+    }
+
+    Roster with(User user) {
+        int index = Arrays.binarySearch(this.ids, user.getId());
+        if (index >= 0 && this.users[index] == user)
+            return this;
+        if (index >= 0) {
+            User[] users = this.users.clone();
+            users[index] = user;
+            return new Roster(this.ids, users);
+        }
+        int insertAt = -index - 1;
+        int[] ids = new int[this.ids.length + 1];
+        User[] users = new User[this.users.length + 1];
+        System.arraycopy(this.ids, 0, ids, 0, insertAt);
+        System.arraycopy(this.users, 0, users, 0, insertAt);
+        ids[insertAt] = user.getId();
+        users[insertAt] = user;
+        System.arraycopy(this.ids, insertAt, ids, insertAt + 1, this.ids.length - insertAt);
+        System.arraycopy(this.users, insertAt, users, insertAt + 1, this.users.length - insertAt);
+        return new Roster(ids, users);
+    }
+
+    Roster without(int id) {
+        int index = Arrays.binarySearch(this.ids, id);
+        if (index < 0)
+            return this;
+        int[] ids = new int[this.ids.length - 1];
+        User[] users = new User[this.users.length - 1];
+        System.arraycopy(this.ids, 0, ids, 0, index);
+        System.arraycopy(this.users, 0, users, 0, index);
+        System.arraycopy(this.ids, index + 1, ids, index, ids.length - index);
+        System.arraycopy(this.users, index + 1, users, index, users.length - index);
+        return new Roster(ids, users);
+    }
+
+    public static final Roster EMPTY = new Roster(new int[0], new User[0]);
+}
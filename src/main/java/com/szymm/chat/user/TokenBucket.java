@@ -0,0 +1,42 @@
+package com.szymm.chat.user;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenBucket {
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAtNanos;
+
+    public TokenBucket(double tokensPerSecond, double burstSeconds) {
+        if (tokensPerSecond <= 0)
+            throw new IllegalArgumentException("token rate must be positive");
+        if (burstSeconds <= 0)
+            throw new IllegalArgumentException("burst must be positive");
+        this.nanosPerToken = (long) (TokenBucket.nanosPerSecond / tokensPerSecond);
+        this.burstNanos = (long) (burstSeconds * TokenBucket.nanosPerSecond);
+        this.fullAtNanos = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire(long tokens) {
+        long cost = this.costOf(tokens);
+        long now = System.nanoTime();
+        while (true) {
+            long fullAt = this.fullAtNanos.get();
+            long next = Math.max(fullAt, now) + cost;
+            if (next - now > this.burstNanos)
+                return false;
+            if (this.fullAtNanos.compareAndSet(fullAt, next))
+                return true;
+        }
+    }
+
+    public void release(long tokens) {
+        this.fullAtNanos.addAndGet(-this.costOf(tokens));
+    }
+
+    private long costOf(long tokens) {
+        return Math.min(tokens * this.nanosPerToken, this.burstNanos);
+    }
+
+    private static final double nanosPerSecond = 1e9;
+}
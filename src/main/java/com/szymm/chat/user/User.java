@@ -7,13 +7,29 @@ import java.util.Optional;
 
 public class User {
     public final String name;
+    private int id;
     private TCPEndpoint tcpEndpoint;
     private UDPEndpoint udpEndpoint;
+    private OutboundQueue outbound;
+    private RateLimiter limiter;
+    private volatile String room;
 
     public User(String name, TCPEndpoint tcpEndpoint, UDPEndpoint udpEndpoint) {
         this.name = name;
+        this.id = -1;
         this.tcpEndpoint = tcpEndpoint;
         this.udpEndpoint = udpEndpoint;
+        this.outbound = null;
+        this.limiter = RateLimiter.UNLIMITED;
+        this.room = null;
+    }
+
+    void bindId(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return this.id;
     }
 
     public void bindTCP(TCPEndpoint endpoint) {
@@ -24,6 +40,31 @@ public class User {
         this.udpEndpoint = endpoint;
     }
 
+    public void bindOutbound(OutboundQueue outbound) {
+        this.outbound = outbound;
+    }
+
+    public void bindLimiter(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    void bindRoom(String room) {
+        this.room = room;
+    }
+
+    public Optional<String> getRoom() {
+        return Optional.ofNullable(this.room);
+    }
+
+    public RateLimiter getLimiter() {
+        return this.limiter;
+    }
+
+    public Optional<OutboundQueue> getOutbound() {
+        boolean isOk = this.outbound != null && !this.outbound.isClosed();
+        return isOk ? Optional.of(this.outbound) : Optional.empty();
+    }
+
     public Optional<TCPEndpoint> getTCP() {
         boolean isOk = this.tcpEndpoint != null && this.tcpEndpoint.isUp();
         return isOk ? Optional.of(this.tcpEndpoint) : Optional.empty();
@@ -34,6 +75,16 @@ public class User {
         return isOk ? Optional.of(this.udpEndpoint) : Optional.empty();
     }
 
+    public long getLastActiveNanos() {
+        TCPEndpoint tcpEndpoint = this.tcpEndpoint;
+        UDPEndpoint udpEndpoint = this.udpEndpoint;
+        if (udpEndpoint == null)
+            return tcpEndpoint.getLastActiveNanos();
+        long tcpActive = tcpEndpoint.getLastActiveNanos();
+        long udpActive = udpEndpoint.getLastActiveNanos();
+        return udpActive - tcpActive > 0 ? udpActive : tcpActive;
+    }
+
     public boolean ownsTCP(TCPEndpoint endpoint) {
         return this.getTCP()
                 .map(tcpEndpoint -> tcpEndpoint == endpoint)
@@ -1,35 +1,58 @@
 package com.szymm.chat.user;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
 
 
 public class UserStore {
     private final Map<String, User> clientMap;
-    private final Lock readLock;
+    private final BitSet usedIds;
     private final Lock writeLock;
+    private final RoomIndex rooms;
+    private User[] slots;
+    private volatile Roster roster;
+    private volatile Listener listener;
 
     public UserStore() {
-        this.clientMap = new HashMap<>();
-        ReadWriteLock lock = new ReentrantReadWriteLock();
-        this.readLock = lock.readLock();
-        this.writeLock = lock.writeLock();
+        this.clientMap = new ConcurrentHashMap<>();
+        this.usedIds = new BitSet();
+        this.writeLock = new ReentrantLock();
+        this.rooms = new RoomIndex();
+        this.slots = new User[16];
+        this.roster = Roster.EMPTY;
+        this.listener = null;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
     }
 
     public void add(User user) {
-        if (!user.name.matches("[-_a-zA-Z0-9]+"))
+        if (!UserStore.isValidName(user.name))
             throw new IllegalArgumentException("illegal name");
         this.writeLock.lock();
         try {
             if (this.clientMap.containsKey(user.name))
                 throw new IllegalArgumentException("name already registered");
+            int id = this.usedIds.nextClearBit(0);
+            if (id >= this.slots.length)
+                this.slots = Arrays.copyOf(this.slots, this.slots.length * 2);
+            this.usedIds.set(id);
+            this.slots[id] = user;
+            user.bindId(id);
             this.clientMap.put(user.name, user);
+            this.rooms.enter(user);
+            this.publish();
+            if (this.listener != null)
+                this.listener.joined(user);
         } finally {
             this.writeLock.unlock();
         }
@@ -38,59 +61,133 @@ public class UserStore {
     public void remove(String name) {
         this.writeLock.lock();
         try {
-            if (!this.clientMap.containsKey(name))
+            User user = this.clientMap.get(name);
+            if (user == null)
                 throw new NoSuchElementException("no client named " + name);
-            this.clientMap.remove(name);
+            this.removeLocked(user);
         } finally {
             this.writeLock.unlock();
         }
     }
 
-    public User find(String name) {
-        this.readLock.lock();
+    public boolean remove(User user) {
+        this.writeLock.lock();
         try {
-            if (!this.clientMap.containsKey(name))
-                throw new NoSuchElementException("no client named " + name);
-            return this.clientMap.get(name);
+            if (this.clientMap.get(user.name) != user)
+                return false;
+            this.removeLocked(user);
+            return true;
         } finally {
-            this.readLock.unlock();
+            this.writeLock.unlock();
         }
     }
 
-    public List<User> findAll() {
-        this.readLock.lock();
+    private void removeLocked(User user) {
+        this.clientMap.remove(user.name);
+        this.rooms.remove(user);
+        this.usedIds.clear(user.getId());
+        this.slots[user.getId()] = null;
+        this.publish();
+        if (this.listener != null)
+            this.listener.left(user);
+    }
+
+    public void joinRoom(User user, String room) {
+        this.writeLock.lock();
         try {
-            return this.clientMap.values()
-                    .stream()
-                    .toList();
+            if (!this.contains(user))
+                throw new NoSuchElementException("no client named " + user.name);
+            this.rooms.join(user, room);
         } finally {
-            this.readLock.unlock();
+            this.writeLock.unlock();
         }
     }
 
-    public List<User> filter(Predicate<User> predicate) {
-        this.readLock.lock();
+    public void leaveRoom(User user) {
+        this.writeLock.lock();
         try {
-            return this.clientMap.values()
-                    .stream()
-                    .filter(predicate)
-                    .toList();
+            if (!this.contains(user))
+                throw new NoSuchElementException("no client named " + user.name);
+            this.rooms.leave(user);
         } finally {
-            this.readLock.unlock();
+            this.writeLock.unlock();
+        }
+    }
+
+    public boolean contains(User user) {
+        return this.clientMap.get(user.name) == user;
+    }
+
+    public Roster roster() {
+        return this.roster;
+    }
+
+    public RoomIndex rooms() {
+        return this.rooms;
+    }
+
+    public Roster audience(User user) {
+        return this.rooms.audience(user);
+    }
+
+    public User find(String name) {
+        User user = this.clientMap.get(name);
+        if (user == null)
+            throw new NoSuchElementException("no client named " + name);
+        return user;
+    }
+
+    public List<User> findAll() {
+        return this.filter(user -> true);
+    }
+
+    public List<User> filter(Predicate<User> predicate) {
+        Roster roster = this.roster;
+        List<User> users = new ArrayList<>(roster.size());
+        for (int i = 0; i < roster.size(); i++) {
+            User user = roster.get(i);
+            if (predicate.test(user))
+                users.add(user);
         }
+        return users;
     }
 
     public List<User> broadcast(String name) {
-        this.readLock.lock();
-        try {
-            if (!this.clientMap.containsKey(name))
-                throw new NoSuchElementException("no client named " + name);
-            User origin = this.clientMap.get(name);
-            return this.clientMap.values().stream()
-                    .filter(user -> user != origin)
-                    .toList();
-        } finally {
-            this.readLock.unlock();
+        int originId = this.find(name).getId();
+        Roster roster = this.roster;
+        List<User> users = new ArrayList<>(roster.size());
+        for (int i = 0; i < roster.size(); i++) {
+            if (roster.idAt(i) != originId)
+                users.add(roster.get(i));
+        }
+        return users;
+    }
+
+    private void publish() {
+        int[] ids = this.usedIds.stream().toArray();
+        User[] users = new User[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            users[i] = this.slots[ids[i]];
+        this.roster = new Roster(ids, users);
+    }
+
+    static boolean isValidName(String name) {
+        if (name.isEmpty())
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean isValid = (c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_';
+            if (!isValid)
+                return false;
         }
+        return true;
+    }
+
+    public interface Listener {
+        void joined(User user);
+        void left(User user);
     }
 }
@@ -0,0 +1,150 @@
+package com.szymm.chat.federation;
+
+import com.szymm.chat.ChatServer;
+import com.szymm.chat.ServerConfig;
+import com.szymm.chat.net.Address;
+import com.szymm.chat.net.Message;
+import com.szymm.chat.net.TCPEndpoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FederationTest {
+    private final List<TCPEndpoint> clients = new ArrayList<>();
+    private ChatServer nodeA;
+    private ChatServer nodeB;
+    private int[] portsA;
+    private int[] portsB;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.portsA = FederationTest.freePorts(3);
+        this.portsB = FederationTest.freePorts(3);
+        this.nodeB = FederationTest.startNode("b", this.portsB, List.of());
+        this.nodeA = FederationTest.startNode("a", this.portsA, List.of(Address.of("localhost", this.portsB[2])));
+        FederationTest.await(() -> FederationTest.peerCount(this.nodeA) == 1 && FederationTest.peerCount(this.nodeB) == 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (TCPEndpoint client : this.clients)
+            client.close();
+        this.nodeA.stop(1000);
+        this.nodeB.stop(1000);
+    }
+
+    @Test
+    void relaysPMToPeerNode() throws Exception {
+        TCPEndpoint alice = this.join(this.portsA, "alice");
+        TCPEndpoint bob = this.join(this.portsB, "bob");
+        this.awaitLinked();
+        new Message("alice", "pm", "hello from a").sendTo(alice);
+        Message received = Message.from(bob);
+        assertEquals("pm", received.type);
+        assertEquals("alice", received.origin);
+        assertEquals("hello from a", received.text);
+    }
+
+    @Test
+    void routesDMToUserOnPeerNode() throws Exception {
+        TCPEndpoint alice = this.join(this.portsA, "alice");
+        TCPEndpoint bob = this.join(this.portsB, "bob");
+        this.awaitLinked();
+        new Message(-1, "bob", "dm", "alice", "psst").sendTo(bob);
+        Message received = Message.from(alice);
+        assertEquals("dm", received.type);
+        assertEquals("bob", received.origin);
+        assertEquals("alice:psst", received.text);
+    }
+
+    @Test
+    void mergesUserListsAcrossNodes() throws Exception {
+        TCPEndpoint alice = this.join(this.portsA, "alice");
+        this.join(this.portsB, "bob");
+        this.awaitLinked();
+        new Message("alice", "ls", "").sendTo(alice);
+        Message response = Message.from(alice);
+        assertEquals("ls", response.type);
+        assertEquals(Set.of("alice", "bob"), Set.of(response.text.split(" ")));
+    }
+
+    @Test
+    void rejectsNameRegisteredOnPeerNode() throws Exception {
+        TCPEndpoint alice = this.join(this.portsA, "alice");
+        this.join(this.portsB, "bob");
+        this.awaitLinked();
+        this.join(this.portsA, "bob");
+        FederationTest.await(() -> this.nodeA.metrics.counter("messages.join").get() == 2);
+        new Message("alice", "ls", "").sendTo(alice);
+        assertEquals("alice bob", Message.from(alice).text);
+        assertEquals(Set.of("alice"), FederationTest.localNames(this.nodeA));
+        assertEquals(Set.of("bob"), FederationTest.localNames(this.nodeB));
+    }
+
+    private TCPEndpoint join(int[] ports, String name) throws IOException {
+        TCPEndpoint client = new TCPEndpoint(Address.of("localhost", ports[0]));
+        client.socket.setSoTimeout(FederationTest.timeoutMillis);
+        this.clients.add(client);
+        new Message(name, "join", "").sendTo(client);
+        return client;
+    }
+
+    private void awaitLinked() throws InterruptedException {
+        FederationTest.await(() -> FederationTest.localNames(this.nodeA).contains("alice")
+                && this.nodeA.getFederation().orElseThrow().isRemote("bob")
+                && this.nodeB.getFederation().orElseThrow().isRemote("alice"));
+    }
+
+    private static ChatServer startNode(String nodeId, int[] ports, List<Address> peers) throws IOException {
+        ServerConfig config = ServerConfig.of(ports[0], ports[1]).withFederation(nodeId, ports[2], peers);
+        ChatServer node = new ChatServer(config);
+        node.start();
+        return node;
+    }
+
+    private static int peerCount(ChatServer node) {
+        return node.getFederation().orElseThrow().getPeerCount();
+    }
+
+    private static Set<String> localNames(ChatServer node) {
+        return node.userStore.findAll().stream()
+                .map(user -> user.name)
+                .collect(Collectors.toSet());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + FederationTest.timeoutMillis * 1_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in " + FederationTest.timeoutMillis + " ms");
+            Thread.sleep(10);
+        }
+    }
+
+    private static int[] freePorts(int count) throws IOException {
+        ServerSocket[] sockets = new ServerSocket[count];
+        try {
+            for (int i = 0; i < count; i++)
+                sockets[i] = new ServerSocket(0);
+            return Arrays.stream(sockets).mapToInt(ServerSocket::getLocalPort).toArray();
+        } finally {
+            for (ServerSocket socket : sockets) {
+                if (socket != null)
+                    socket.close();
+            }
+        }
+    }
+
+    private static final int timeoutMillis = 5000;
+}
@@ -0,0 +1,124 @@
+package com.szymm.chat.history;
+
+import com.szymm.chat.net.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void rebuildsAllRecordsOnReopen() throws Exception {
+        HistoryStoreTest.fill(this.directory, 10);
+        try (HistoryStore store = HistoryStore.open(this.directory, HistoryStoreTest.segmentSize)) {
+            assertEquals(10, store.size());
+            HistoryStoreTest.assertRecords(store, 10);
+        }
+    }
+
+    @Test
+    void dropsRecordCutInsideItsBody() throws Exception {
+        HistoryStoreTest.fill(this.directory, 10);
+        HistoryStoreTest.truncateLastRecord(this.directory, HistoryStoreTest.headerSize + 3);
+        HistoryStoreTest.assertRecoversFromTruncation(this.directory, 9);
+    }
+
+    @Test
+    void dropsRecordCutInsideItsHeader() throws Exception {
+        HistoryStoreTest.fill(this.directory, 10);
+        HistoryStoreTest.truncateLastRecord(this.directory, 10);
+        HistoryStoreTest.assertRecoversFromTruncation(this.directory, 9);
+    }
+
+    private static void assertRecoversFromTruncation(Path directory, int complete) throws Exception {
+        try (HistoryStore store = HistoryStore.open(directory, HistoryStoreTest.segmentSize)) {
+            assertEquals(complete, store.size());
+            HistoryStoreTest.assertRecords(store, complete);
+            assertThrows(IndexOutOfBoundsException.class, () -> store.get(complete));
+            store.append(HistoryStoreTest.messageAt(complete));
+            HistoryStoreTest.awaitSize(store, complete + 1);
+            assertEquals("message " + complete, store.get(complete).text);
+        }
+        try (HistoryStore store = HistoryStore.open(directory, HistoryStoreTest.segmentSize)) {
+            assertEquals(complete + 1, store.size());
+            HistoryStoreTest.assertRecords(store, complete + 1);
+        }
+    }
+
+    private static void assertRecords(HistoryStore store, int count) {
+        for (int i = 0; i < count; i++) {
+            Message message = store.get(i);
+            assertEquals("message " + i, message.text);
+            assertEquals(HistoryStoreTest.messageAt(i).type, message.type);
+        }
+        List<Message> publicMessages = store.lastPublic(count);
+        assertEquals((count + 1) / 2, store.publicSize());
+        assertEquals((count + 1) / 2, publicMessages.size());
+        for (int i = 0; i < publicMessages.size(); i++)
+            assertEquals("message " + 2 * i, publicMessages.get(i).text);
+    }
+
+    private static void fill(Path directory, int count) throws Exception {
+        try (HistoryStore store = HistoryStore.open(directory, HistoryStoreTest.segmentSize)) {
+            for (int i = 0; i < count; i++)
+                store.append(HistoryStoreTest.messageAt(i));
+            HistoryStoreTest.awaitSize(store, count);
+        }
+        assertTrue(HistoryStoreTest.segments(directory).size() > 1);
+    }
+
+    private static void truncateLastRecord(Path directory, int keptBytes) throws IOException {
+        List<Path> segments = HistoryStoreTest.segments(directory);
+        Path last = segments.get(segments.size() - 1);
+        ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(last)).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 0;
+        int lastOffset = 0;
+        while (offset + HistoryStoreTest.headerSize <= segment.capacity()) {
+            int size = segment.getInt(offset + 16);
+            if (size <= 0)
+                break;
+            lastOffset = offset;
+            offset += HistoryStoreTest.headerSize + size;
+        }
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(lastOffset + keptBytes);
+        }
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static void awaitSize(HistoryStore store, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (store.size() < size && System.nanoTime() < deadline)
+            Thread.sleep(5);
+        assertEquals(size, store.size());
+    }
+
+    private static Message messageAt(int i) {
+        return i % 2 == 0
+                ? new Message(i, "alice", "pm", "", "message " + i)
+                : new Message(i, "alice", "dm", "bob", "message " + i);
+    }
+
+    private static final int segmentSize = 256;
+    private static final int headerSize = 20;
+}
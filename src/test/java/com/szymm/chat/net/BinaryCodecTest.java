@@ -0,0 +1,97 @@
+package com.szymm.chat.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCodecTest {
+    @Test
+    void roundTripsPM() {
+        Message message = new Message(7, "alice", "pm", "", "hello there");
+        BinaryCodecTest.assertSameMessage(message, BinaryCodecTest.roundTrip(message));
+    }
+
+    @Test
+    void roundTripsDMWithTarget() {
+        Message message = new Message(3, "alice", "dm", "bob", "psst");
+        Message decoded = BinaryCodecTest.roundTrip(message);
+        BinaryCodecTest.assertSameMessage(message, decoded);
+        assertEquals(Opcode.DM, decoded.opcode);
+    }
+
+    @Test
+    void keepsTypeOfUnknownOpcode() {
+        Message message = new Message(1, "alice", "shout", "", "loud");
+        Message decoded = BinaryCodecTest.roundTrip(message);
+        assertEquals(Opcode.OTHER, decoded.opcode);
+        assertEquals("shout", decoded.type);
+        BinaryCodecTest.assertSameMessage(message, decoded);
+    }
+
+    @Test
+    void roundTripsEmptyAndMultibyteText() {
+        BinaryCodecTest.assertSameMessage(new Message("alice", "pm", ""),
+                BinaryCodecTest.roundTrip(new Message("alice", "pm", "")));
+        Message message = new Message(2, "alice", "pm", "", "zażółć gęślą jaźń ☃ 😀");
+        BinaryCodecTest.assertSameMessage(message, BinaryCodecTest.roundTrip(message));
+    }
+
+    @Test
+    void roundTripsSenderIdAcrossVarintBoundaries() {
+        int[] senderIds = {-1, 0, 126, 127, 128, 16382, 16383, 16384, Integer.MAX_VALUE - 1};
+        for (int senderId : senderIds) {
+            Message message = new Message(senderId, "alice", "pm", "", "id " + senderId);
+            assertEquals(senderId, BinaryCodecTest.roundTrip(message).senderId, "sender id " + senderId);
+        }
+    }
+
+    @Test
+    void roundTripsLongNamesAndText() {
+        String origin = "a".repeat(300);
+        String text = "x".repeat(70_000);
+        Message message = new Message(5, origin, "dm", "b".repeat(200), text);
+        BinaryCodecTest.assertSameMessage(message, BinaryCodecTest.roundTrip(message));
+    }
+
+    @Test
+    void textEncodingIsNotMistakenForBinary() {
+        Message message = new Message("alice", "pm", "hello");
+        byte[] bytes = message.encode(WireFormat.TEXT);
+        byte[] messageBytes = Arrays.copyOfRange(bytes, 4, bytes.length);
+        assertFalse(BinaryCodec.isBinary(messageBytes));
+        Message decoded = Message.from(messageBytes);
+        assertEquals("alice", decoded.origin);
+        assertEquals(Opcode.PM, decoded.opcode);
+        assertEquals("hello", decoded.text);
+    }
+
+    @Test
+    void cachesEncodedBytes() {
+        Message message = new Message(1, "alice", "pm", "", "cached");
+        assertSame(message.encode(WireFormat.BINARY), message.encode(WireFormat.BINARY));
+    }
+
+    private static Message roundTrip(Message message) {
+        byte[] bytes = message.encode(WireFormat.BINARY);
+        assertEquals(bytes.length - 4, Frame.intAt(bytes, 0), "size prefix");
+        byte[] messageBytes = Arrays.copyOfRange(bytes, 4, bytes.length);
+        assertTrue(BinaryCodec.isBinary(messageBytes));
+        Message decoded = Message.from(messageBytes);
+        assertEquals(bytes.length, decoded.getWireSize());
+        return decoded;
+    }
+
+    private static void assertSameMessage(Message expected, Message actual) {
+        assertEquals(expected.senderId, actual.senderId);
+        assertEquals(expected.origin, actual.origin);
+        assertEquals(expected.opcode, actual.opcode);
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.target, actual.target);
+        assertEquals(expected.text, actual.text);
+    }
+}
@@ -0,0 +1,124 @@
+package com.szymm.chat.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FrameAssemblerTest {
+    @Test
+    void reassemblesFragmentsInAnyOrder() {
+        FrameAssembler assembler = new FrameAssembler();
+        byte[] frame = FrameAssemblerTest.frameOf(3000);
+        assertNull(FrameAssemblerTest.accept(assembler, 1, 2, 3, frame));
+        assertNull(FrameAssemblerTest.accept(assembler, 1, 0, 3, frame));
+        byte[] wireBytes = FrameAssemblerTest.accept(assembler, 1, 1, 3, frame);
+        assertNotNull(wireBytes);
+        assertEquals(frame.length, Frame.intAt(wireBytes, 0));
+        assertArrayEquals(frame, Arrays.copyOfRange(wireBytes, 4, wireBytes.length));
+        assertEquals(0, assembler.getPendingCount());
+    }
+
+    @Test
+    void ignoresDuplicateFragments() {
+        FrameAssembler assembler = new FrameAssembler();
+        byte[] frame = FrameAssemblerTest.frameOf(2000);
+        assertNull(FrameAssemblerTest.accept(assembler, 7, 0, 2, frame));
+        assertNull(FrameAssemblerTest.accept(assembler, 7, 0, 2, frame));
+        assertEquals(1, assembler.getPendingCount());
+        byte[] wireBytes = FrameAssemblerTest.accept(assembler, 7, 1, 2, frame);
+        assertNotNull(wireBytes);
+        assertArrayEquals(frame, Arrays.copyOfRange(wireBytes, 4, wireBytes.length));
+        assertNull(FrameAssemblerTest.accept(assembler, 7, 1, 2, frame));
+        assertEquals(1, assembler.getPendingCount());
+    }
+
+    @Test
+    void rejectsFragmentsOutOfRange() {
+        FrameAssembler assembler = new FrameAssembler(8, 4096, 5000);
+        byte[] frame = FrameAssemblerTest.frameOf(3000);
+        byte[] indexPastCount = FrameAssemblerTest.fragment(1, 3, 3, frame.length, new byte[0]);
+        assertNull(assembler.accept(indexPastCount, indexPastCount.length));
+        byte[] countTooSmall = FrameAssemblerTest.fragment(1, 0, 2, frame.length, FrameAssemblerTest.chunkOf(frame, 0));
+        assertNull(assembler.accept(countTooSmall, countTooSmall.length));
+        byte[] shortChunk = FrameAssemblerTest.fragment(1, 0, 3, frame.length, new byte[10]);
+        assertNull(assembler.accept(shortChunk, shortChunk.length));
+        byte[] negativeSize = FrameAssemblerTest.fragment(1, 0, 1, -1, new byte[0]);
+        assertNull(assembler.accept(negativeSize, negativeSize.length));
+        byte[] tooLarge = FrameAssemblerTest.frameOf(5000);
+        assertNull(FrameAssemblerTest.accept(assembler, 2, 0, 4, tooLarge));
+        byte[] truncated = new byte[Frame.FRAGMENT_HEADER - 1];
+        assertNull(assembler.accept(truncated, truncated.length));
+        assertEquals(0, assembler.getPendingCount());
+    }
+
+    @Test
+    void rejectsFragmentsThatDisagreeWithTheirFrame() {
+        FrameAssembler assembler = new FrameAssembler();
+        byte[] frame = FrameAssemblerTest.frameOf(3000);
+        byte[] other = FrameAssemblerTest.frameOf(2000);
+        assertNull(FrameAssemblerTest.accept(assembler, 4, 0, 3, frame));
+        assertNull(FrameAssemblerTest.accept(assembler, 4, 1, 2, other));
+        assertNull(FrameAssemblerTest.accept(assembler, 4, 1, 3, frame));
+        assertNotNull(FrameAssemblerTest.accept(assembler, 4, 2, 3, frame));
+    }
+
+    @Test
+    void expiresIncompleteFramesAfterTimeout() throws InterruptedException {
+        FrameAssembler assembler = new FrameAssembler(8, 1 << 20, 20);
+        byte[] frame = FrameAssemblerTest.frameOf(3000);
+        assertNull(FrameAssemblerTest.accept(assembler, 1, 0, 3, frame));
+        Thread.sleep(60);
+        assertNull(FrameAssemblerTest.accept(assembler, 1, 1, 3, frame));
+        assertEquals(1, assembler.getExpiredCount());
+        assertNull(FrameAssemblerTest.accept(assembler, 1, 2, 3, frame));
+        assertEquals(1, assembler.getPendingCount());
+    }
+
+    @Test
+    void evictsOldestFrameWhenFull() {
+        FrameAssembler assembler = new FrameAssembler(2, 1 << 20, 5000);
+        byte[] frame = FrameAssemblerTest.frameOf(2000);
+        for (int frameId = 1; frameId <= 3; frameId++)
+            assertNull(FrameAssemblerTest.accept(assembler, frameId, 0, 2, frame));
+        assertEquals(2, assembler.getPendingCount());
+        assertEquals(1, assembler.getExpiredCount());
+        assertNotNull(FrameAssemblerTest.accept(assembler, 3, 1, 2, frame));
+        assertNull(FrameAssemblerTest.accept(assembler, 1, 1, 2, frame));
+    }
+
+    private static byte[] accept(FrameAssembler assembler, int frameId, int index, int count, byte[] frame) {
+        byte[] datagram = FrameAssemblerTest.fragment(frameId, index, count, frame.length,
+                FrameAssemblerTest.chunkOf(frame, index));
+        return assembler.accept(datagram, datagram.length);
+    }
+
+    private static byte[] chunkOf(byte[] frame, int index) {
+        int offset = Math.min(index * Frame.FRAGMENT_CHUNK, frame.length);
+        return Arrays.copyOfRange(frame, offset, Math.min(offset + Frame.FRAGMENT_CHUNK, frame.length));
+    }
+
+    private static byte[] fragment(int frameId, int index, int count, int size, byte[] chunk) {
+        byte[] datagram = new byte[Frame.FRAGMENT_HEADER + chunk.length];
+        Frame.putInt(datagram, 0, Frame.FRAGMENT_MARK);
+        Frame.putInt(datagram, 4, frameId);
+        datagram[8] = (byte) index;
+        datagram[9] = (byte) (index >>> 8);
+        datagram[10] = (byte) count;
+        datagram[11] = (byte) (count >>> 8);
+        Frame.putInt(datagram, 12, size);
+        System.arraycopy(chunk, 0, datagram, Frame.FRAGMENT_HEADER, chunk.length);
+        return datagram;
+    }
+
+    private static byte[] frameOf(int size) {
+        byte[] frame = new byte[size];
+        for (int i = 0; i < size; i++)
+            frame[i] = (byte) (i * 31 + 7);
+        return frame;
+    }
+}
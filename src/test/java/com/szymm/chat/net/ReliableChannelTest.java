@@ -0,0 +1,148 @@
+package com.szymm.chat.net;
+
+import com.szymm.chat.metrics.Metrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReliableChannelTest {
+    private DatagramSocket peer;
+    private UDPMultiplexer multiplexer;
+    private UDPEndpoint endpoint;
+    private Metrics metrics;
+    private List<byte[]> delivered;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        this.peer = new DatagramSocket(0, loopback);
+        this.peer.setSoTimeout(2000);
+        this.metrics = new Metrics();
+        this.multiplexer = new UDPMultiplexer(new DatagramSocket(0, loopback), 4096, this.metrics);
+        this.delivered = new ArrayList<>();
+        this.multiplexer.setDispatcher((endpoint, datagram, length) ->
+                this.delivered.add(Arrays.copyOf(datagram, length)));
+        this.endpoint = new UDPEndpoint(this.multiplexer, Address.of(loopback, this.peer.getLocalPort()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.multiplexer.close();
+        this.peer.close();
+    }
+
+    @Test
+    void suppressesDuplicates() throws IOException {
+        byte[] payload = {1, 2, 3};
+        this.deliver(0, 0, payload);
+        this.deliver(0, 0, payload);
+        assertEquals(1, this.delivered.size());
+        assertArrayEquals(payload, this.delivered.get(0));
+        assertEquals(1, this.receiveAck()[0]);
+        assertEquals(1, this.receiveAck()[0]);
+        assertEquals(1, this.metrics.counter("udp.reliable.duplicates").get());
+    }
+
+    @Test
+    void deliversAcrossSequenceWraparound() throws IOException {
+        int[] sequence = {Integer.MAX_VALUE - 1, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1};
+        for (int i = 0; i < sequence.length; i++)
+            this.deliver(sequence[i], Integer.MAX_VALUE - 1, new byte[]{(byte) i});
+        assertEquals(sequence.length, this.delivered.size());
+        for (int i = 0; i < sequence.length; i++)
+            assertEquals(i, this.delivered.get(i)[0]);
+        int cumulative = 0;
+        for (int i = 0; i < sequence.length; i++)
+            cumulative = this.receiveAck()[0];
+        assertEquals(Integer.MIN_VALUE + 2, cumulative);
+        assertEquals(0, this.metrics.counter("udp.reliable.duplicates").get());
+    }
+
+    @Test
+    void buffersOutOfOrderAndAcksSelectively() throws IOException {
+        this.deliver(1, 0, new byte[]{1});
+        int[] ack = this.receiveAck();
+        assertEquals(0, ack[0]);
+        assertEquals(1, ack[1]);
+        this.deliver(0, 0, new byte[]{0});
+        assertEquals(2, this.receiveAck()[0]);
+        assertEquals(2, this.delivered.size());
+    }
+
+    @Test
+    void fastRetransmitsGapsBelowSelectiveAck() throws IOException, InterruptedException {
+        ReliableChannel channel = this.endpoint.getReliableChannel();
+        channel.send(new byte[]{0}, 1);
+        channel.send(new byte[]{1}, 1);
+        Thread.sleep(5);
+        channel.send(new byte[]{2}, 1);
+        for (int seq = 0; seq < 3; seq++)
+            assertEquals(seq, Frame.intAt(this.receive(), 4));
+        this.acknowledge(0, 1 << 1);
+        assertEquals(0, Frame.intAt(this.receive(), 4));
+        assertEquals(1, Frame.intAt(this.receive(), 4));
+        assertEquals(3, channel.getInFlight());
+        assertEquals(2, this.metrics.counter("udp.reliable.retransmits").get());
+        this.acknowledge(3, 0);
+        assertEquals(0, channel.getInFlight());
+    }
+
+    @Test
+    void retransmitsAfterTimeout() throws IOException {
+        ReliableChannel channel = this.endpoint.getReliableChannel();
+        channel.send(new byte[]{9}, 1);
+        byte[] first = this.receive();
+        channel.retransmit(System.nanoTime() + 1_000_000_000L);
+        byte[] second = this.receive();
+        assertEquals(Frame.intAt(first, 4), Frame.intAt(second, 4));
+        assertEquals(9, second[Frame.RELIABLE_HEADER]);
+        assertTrue(this.metrics.counter("udp.reliable.retransmits").get() >= 1);
+        assertEquals(1, channel.getInFlight());
+    }
+
+    private void deliver(int seq, int floor, byte[] payload) throws IOException {
+        byte[] datagram = new byte[Frame.RELIABLE_HEADER + payload.length];
+        Frame.putInt(datagram, 0, Frame.RELIABLE_MARK);
+        Frame.putInt(datagram, 4, seq);
+        Frame.putInt(datagram, 8, floor);
+        System.arraycopy(payload, 0, datagram, Frame.RELIABLE_HEADER, payload.length);
+        this.peer.send(new DatagramPacket(datagram, datagram.length, this.multiplexer.getLocalAddress().inet,
+                this.multiplexer.getLocalAddress().port));
+        this.multiplexer.read();
+    }
+
+    private void acknowledge(int cumulative, long sack) throws IOException {
+        byte[] ack = new byte[Frame.ACK_SIZE];
+        Frame.putInt(ack, 0, Frame.ACK_MARK);
+        Frame.putInt(ack, 4, cumulative);
+        Frame.putInt(ack, 8, (int) sack);
+        Frame.putInt(ack, 12, (int) (sack >>> 32));
+        this.peer.send(new DatagramPacket(ack, ack.length, this.multiplexer.getLocalAddress().inet,
+                this.multiplexer.getLocalAddress().port));
+        this.multiplexer.read();
+    }
+
+    private int[] receiveAck() throws IOException {
+        byte[] ack = this.receive();
+        assertEquals(Frame.ACK_MARK, Frame.intAt(ack, 0));
+        return new int[]{Frame.intAt(ack, 4), Frame.intAt(ack, 8), Frame.intAt(ack, 12)};
+    }
+
+    private byte[] receive() throws IOException {
+        DatagramPacket packet = new DatagramPacket(new byte[4096], 4096);
+        this.peer.receive(packet);
+        return Arrays.copyOf(packet.getData(), packet.getLength());
+    }
+}